@@ -0,0 +1,63 @@
+package com.yueqi.timer;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于 ELAPSED_REALTIME_WAKEUP 闹钟的调度器. Handler 按开机后的非睡眠时间计时, 设备深度睡眠时停走;
+ * 这里的延迟包含睡眠时间, 到期时唤醒设备, 任务在 handler 的线程上执行.
+ * 允许到期后小幅延后 (不需要精确闹钟权限), 只适合秒级以上的低频任务. 只在 handler 的线程上使用.
+ */
+public class AlarmTickScheduler implements TickScheduler {
+    private static final long MIN_WINDOW_MS = 1000;
+
+    private final AlarmManager alarmManager;
+    private final Handler handler;
+    private final String tag;
+    private final long maxWindowMillis;
+    private final Map<Runnable, AlarmManager.OnAlarmListener> alarms = new HashMap<>();
+
+    public AlarmTickScheduler(Context context, Handler handler, String tag) {
+        this(context, handler, tag, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxWindowMillis 到期后最多延后的时间, 不小于 1 秒
+     */
+    public AlarmTickScheduler(Context context, Handler handler, String tag, long maxWindowMillis) {
+        this.alarmManager = context.getSystemService(AlarmManager.class);
+        this.handler = handler;
+        this.tag = tag;
+        this.maxWindowMillis = Math.max(MIN_WINDOW_MS, maxWindowMillis);
+    }
+
+    /**
+     * 同一任务再次调度时替换原来的闹钟.
+     */
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        cancel(task);
+        AlarmManager.OnAlarmListener listener = () -> {
+            alarms.remove(task);
+            task.run();
+        };
+        alarms.put(task, listener);
+        // 延后窗口为延迟的 1/10, 例如断电确认 60 秒最多晚 6 秒
+        long window = Math.min(maxWindowMillis, Math.max(MIN_WINDOW_MS, delayMillis / 10));
+        alarmManager.setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + delayMillis, window, tag, listener, handler);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        AlarmManager.OnAlarmListener listener = alarms.remove(task);
+        if (listener != null) {
+            alarmManager.cancel(listener);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.yueqi.timer;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * 开机自启流程: BOOT_COMPLETED -> 计时服务启动 -> 第一次 tick -> 悬浮窗可见.
+ * 每个阶段由前一阶段完成时触发, 不再依赖固定延时; 唤醒锁从收到开机广播持有到流程结束.
+ * 各阶段时间点 (开机后的 elapsedRealtime) 写入 systrace 和日志, 用于统计冷启动耗时.
+ * 某个阶段失败 (服务无法启动, 没有悬浮窗权限) 或超时未完成时放弃本次流程, 之后的开机或上电可以重新开始.
+ * 所有方法只在主线程调用.
+ */
+public final class BootPipeline {
+    private static final String TAG = "BootPipeline";
+    private static final String TRACE_NAME = "BootPipeline";
+    private static final int TRACE_COOKIE = 1;
+    // 兜底超时, 正常情况下流程结束时即释放; 到时仍未结束则放弃流程
+    private static final long WAKE_LOCK_TIMEOUT_MS = 60_000;
+
+    public static final int STAGE_BOOT_COMPLETED = 0;
+    public static final int STAGE_SERVICE_STARTED = 1;
+    public static final int STAGE_FIRST_TICK = 2;
+    public static final int STAGE_OVERLAY_VISIBLE = 3;
+    private static final String[] STAGE_NAMES = {"boot_completed", "service_started", "first_tick", "overlay_visible"};
+
+    private static final long[] stageTimes = new long[STAGE_NAMES.length];
+    private static boolean active;
+    private static boolean overlayPending;
+    private static PowerManager.WakeLock wakeLock;
+    private static long wakeLockAcquiredAt;
+    private static long wakeLockHeldMillis;
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    // 持有唤醒锁期间设备不睡眠, 用 Handler 计时即可
+    private static final Runnable timeout = () -> abort("timeout");
+
+    private BootPipeline() {
+    }
+
+    /**
+     * 由 BootReceiver 调用, 启动计时服务; 悬浮窗等到计时服务就绪后再启动.
+     */
+    public static void start(Context context, boolean showOverlay) {
+        Trace.beginSection("BootPipeline.start");
+        try {
+            if (active) {
+                // 上一次流程还没结束, 放弃它重新开始
+                abort("restarted");
+            }
+            Arrays.fill(stageTimes, 0);
+            active = true;
+            overlayPending = showOverlay;
+            mark(STAGE_BOOT_COMPLETED);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.beginAsyncSection(TRACE_NAME, TRACE_COOKIE);
+            }
+
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Timer:BootWakeLock");
+            wakeLock.setReferenceCounted(false);
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+            wakeLockAcquiredAt = SystemClock.elapsedRealtime();
+            handler.postDelayed(timeout, WAKE_LOCK_TIMEOUT_MS);
+
+            Intent serviceIntent = new Intent(context, TimerService.class)
+                    .setAction(TimerService.ACTION_START);
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    context.startForegroundService(serviceIntent);
+                } else {
+                    context.startService(serviceIntent);
+                }
+            } catch (IllegalStateException | SecurityException e) {
+                // 后台启动前台服务受限等
+                e.printStackTrace();
+                abort("service_failed");
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    public static void onServiceStarted() {
+        if (active && stageTimes[STAGE_SERVICE_STARTED] == 0) {
+            mark(STAGE_SERVICE_STARTED);
+        }
+    }
+
+    /**
+     * 计时服务发出第一次 tick 时调用, 表示计时已就绪.
+     */
+    public static void onTimerReady(Context context) {
+        if (!active || stageTimes[STAGE_FIRST_TICK] != 0) {
+            return;
+        }
+        mark(STAGE_FIRST_TICK);
+        if (overlayPending) {
+            Trace.beginSection("BootPipeline.startOverlay");
+            try {
+                context.startService(new Intent(context, FloatingWindowService.class));
+            } catch (IllegalStateException | SecurityException e) {
+                e.printStackTrace();
+                abort("overlay_failed");
+            } finally {
+                Trace.endSection();
+            }
+        } else {
+            finish();
+        }
+    }
+
+    /**
+     * 悬浮窗第一次绘制完成时调用.
+     */
+    public static void onOverlayVisible() {
+        if (!active || !overlayPending) {
+            return;
+        }
+        mark(STAGE_OVERLAY_VISIBLE);
+        finish();
+    }
+
+    /**
+     * 悬浮窗无法显示时调用, 例如没有悬浮窗权限.
+     */
+    public static void onOverlayFailed() {
+        if (active && overlayPending) {
+            abort("overlay_failed");
+        }
+    }
+
+    private static void mark(int stage) {
+        stageTimes[stage] = SystemClock.elapsedRealtime();
+        Trace.beginSection(TRACE_NAME + "." + STAGE_NAMES[stage]);
+        Trace.endSection();
+    }
+
+    // 未到达的阶段在摘要中显示为 '-'
+    private static void abort(String reason) {
+        Log.w(TAG, "boot pipeline aborted: " + reason);
+        finish();
+    }
+
+    private static void finish() {
+        handler.removeCallbacks(timeout);
+        active = false;
+        overlayPending = false;
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+            wakeLockHeldMillis = SystemClock.elapsedRealtime() - wakeLockAcquiredAt;
+        }
+        wakeLock = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(TRACE_NAME, TRACE_COOKIE);
+        }
+        Log.i(TAG, getSummary());
+    }
+
+    /**
+     * 最近一次开机流程的各阶段时间, 相对于开机 (elapsedRealtime 为 0) 的毫秒数.
+     */
+    public static String getSummary() {
+        StringBuilder summary = new StringBuilder("boot pipeline");
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            summary.append(' ').append(STAGE_NAMES[i]).append('=');
+            if (stageTimes[i] == 0) {
+                summary.append('-');
+            } else {
+                summary.append(stageTimes[i]).append("ms");
+            }
+        }
+        summary.append(" wakelock=").append(wakeLockHeldMillis).append("ms");
+        if (active) {
+            summary.append(" (in progress)");
+        }
+        return summary.toString();
+    }
+}
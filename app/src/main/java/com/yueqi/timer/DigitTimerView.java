@@ -0,0 +1,162 @@
+package com.yueqi.timer;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * 计时显示控件, 只绘制 0-9 和 ':'.
+ * 字形宽度在设置字号时计算一次, 每个数字占同样宽的格子, 因此数字变化时控件尺寸不变,
+ * 不会触发重新测量和布局; 只有位数变化 (例如小时超过两位) 时才请求布局.
+ * 显示内容没有变化时不重绘. 开启硬件加速后脏区域会被忽略, 所以内容变化时整体重绘.
+ */
+public class DigitTimerView extends View {
+    private static final int DEFAULT_TEXT_SIZE_SP = 32;
+    private static final int MAX_CHARS = 24;
+    private static final char[] INITIAL_TEXT = {'0', '0', ':', '0', '0', ':', '0', '0'};
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final ElapsedTimeFormatter formatter = new ElapsedTimeFormatter();
+    // 当前显示的字符和每个格子的左边界, cellLeft[length] 为右边界
+    private final char[] chars = new char[MAX_CHARS];
+    private final int[] cellLeft = new int[MAX_CHARS + 1];
+    private int length;
+
+    // 0-9 中最宽的数字宽度, ':' 宽度, 以及每个字形在格子中的水平偏移
+    private int digitCellWidth;
+    private int colonCellWidth;
+    private final float[] glyphOffset = new float[11];
+    private int textHeight;
+    private float baselineOffset;
+
+    public DigitTimerView(Context context) {
+        this(context, null);
+    }
+
+    public DigitTimerView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public DigitTimerView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                DEFAULT_TEXT_SIZE_SP, getResources().getDisplayMetrics());
+        ColorStateList textColor = null;
+        int textStyle = Typeface.NORMAL;
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.DigitTimerView, defStyleAttr, 0);
+        try {
+            textSize = a.getDimension(R.styleable.DigitTimerView_android_textSize, textSize);
+            textColor = a.getColorStateList(R.styleable.DigitTimerView_android_textColor);
+            textStyle = a.getInt(R.styleable.DigitTimerView_android_textStyle, textStyle);
+        } finally {
+            a.recycle();
+        }
+        if (textColor == null) {
+            // 与 TextView 一致, 默认使用主题的主要文字颜色
+            TypedArray theme = context.obtainStyledAttributes(new int[]{android.R.attr.textColorPrimary});
+            try {
+                textColor = theme.getColorStateList(0);
+            } finally {
+                theme.recycle();
+            }
+        }
+        paint.setColor(textColor != null ? textColor.getDefaultColor() : 0xFF000000);
+        paint.setTypeface(Typeface.defaultFromStyle(textStyle));
+        paint.setTextSize(textSize);
+        computeGlyphMetrics();
+
+        System.arraycopy(INITIAL_TEXT, 0, chars, 0, INITIAL_TEXT.length);
+        length = INITIAL_TEXT.length;
+        computeCellBounds();
+    }
+
+    private void computeGlyphMetrics() {
+        float[] widths = new float[11];
+        char[] glyphs = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', ':'};
+        paint.getTextWidths(glyphs, 0, glyphs.length, widths);
+        float maxDigit = 0;
+        for (int i = 0; i < 10; i++) {
+            maxDigit = Math.max(maxDigit, widths[i]);
+        }
+        digitCellWidth = (int) Math.ceil(maxDigit);
+        colonCellWidth = (int) Math.ceil(widths[10]);
+        for (int i = 0; i < 10; i++) {
+            glyphOffset[i] = (digitCellWidth - widths[i]) / 2f;
+        }
+        glyphOffset[10] = (colonCellWidth - widths[10]) / 2f;
+
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        textHeight = metrics.descent - metrics.ascent;
+        baselineOffset = -metrics.ascent;
+    }
+
+    private void computeCellBounds() {
+        int x = 0;
+        for (int i = 0; i < length; i++) {
+            cellLeft[i] = x;
+            x += chars[i] == ':' ? colonCellWidth : digitCellWidth;
+        }
+        cellLeft[length] = x;
+    }
+
+    /**
+     * 显示计时, 格式同 {@link ElapsedTimeFormatter}.
+     */
+    public void setElapsedMillis(long elapsedMillis) {
+        int newLength = formatter.format(elapsedMillis);
+        char[] buffer = formatter.getBuffer();
+        if (newLength != length || isColonLayoutChanged(buffer, newLength)) {
+            // 位数变化, 控件宽度随之变化
+            System.arraycopy(buffer, 0, chars, 0, newLength);
+            length = newLength;
+            computeCellBounds();
+            requestLayout();
+            invalidate();
+            return;
+        }
+        boolean changed = false;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != buffer[i]) {
+                chars[i] = buffer[i];
+                changed = true;
+            }
+        }
+        // 同一秒内的多次更新不重绘
+        if (changed) {
+            invalidate();
+        }
+    }
+
+    private boolean isColonLayoutChanged(char[] buffer, int count) {
+        for (int i = 0; i < count; i++) {
+            if ((chars[i] == ':') != (buffer[i] == ':')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = cellLeft[length] + getPaddingLeft() + getPaddingRight();
+        int height = textHeight + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float baseline = getPaddingTop() + baselineOffset;
+        int left = getPaddingLeft();
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            int glyph = c == ':' ? 10 : c - '0';
+            canvas.drawText(chars, i, 1, left + cellLeft[i] + glyphOffset[glyph], baseline, paint);
+        }
+    }
+}
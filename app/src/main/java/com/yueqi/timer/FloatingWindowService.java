@@ -1,23 +1,30 @@
 package com.yueqi.timer;
 
 import android.app.Service;
-import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.graphics.PixelFormat;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.ViewGroup;
 import android.view.WindowManager;
 import android.widget.TextView;
 
 public class FloatingWindowService extends Service {
-    private static final String PREFS_NAME = "TimerPrefs";
-    private static final String PREF_X = "window_x";
-    private static final String PREF_Y = "window_y";
+    // 拖动结束后等待这么久再保存位置, 连续拖动只写一次
+    private static final long SAVE_POSITION_DELAY_MS = 1000;
+    // 松手时距离屏幕边缘小于该值 (dp) 则吸附到边缘
+    private static final int SNAP_DISTANCE_DP = 48;
     private int initialX;
     private int initialY;
     private float initialTouchX;
@@ -25,28 +32,91 @@ public class FloatingWindowService extends Service {
 
     private WindowManager windowManager;
     private View floatingView;
-    private TextView floatingTimerText;
-    private BroadcastReceiver timerReceiver;
+    private DigitTimerView floatingTimerText;
+    private View lapRow;
+    private TextView lapName;
+    private DigitTimerView lapTime;
+    private TextView lapHistory;
+    private long shownLapCount = -1;
+    private final ElapsedTimeFormatter lapFormatter = new ElapsedTimeFormatter();
+    // 除行程外的计时器, 下标为计时器编号
+    private ViewGroup timerRows;
+    private View[] rowViews = new View[0];
+    private DigitTimerView[] rowTimes = new DigitTimerView[0];
+    private WindowManager.LayoutParams params;
+    private TimerSettings settings;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // 拖动目标位置, 每帧最多更新一次窗口布局
+    private int targetX;
+    private int targetY;
+    private boolean frameScheduled;
+    private final Choreographer.FrameCallback layoutFrame = frameTimeNanos -> {
+        frameScheduled = false;
+        applyTargetPosition();
+    };
+    private boolean positionSavePending;
+    private final Runnable savePosition = this::savePosition;
+    private TimerService timerService;
+    private boolean timerBound;
+    private final TimerService.TickListener tickListener = (elapsedMillis, running) -> updateTimerDisplay(elapsedMillis);
+    private final TimerService.TimersListener timersListener = this::updateTimerRows;
+    // 最近一次 tick 的时刻, 在随后的绘制中统计 tick 到绘制的延迟
+    private long pendingDrawTickNanos;
+    private final ViewTreeObserver.OnDrawListener drawListener = () -> {
+        if (pendingDrawTickNanos != 0 && timerService != null) {
+            timerService.getPerfStats().recordOverlayDraw(System.nanoTime() - pendingDrawTickNanos);
+        }
+        pendingDrawTickNanos = 0;
+    };
+    private final ServiceConnection timerConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            timerService = ((TimerService.LocalBinder) service).getService();
+            timerService.addTickListener(tickListener);
+            timerService.addTimersListener(timersListener);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            timerService = null;
+        }
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
         
-        initFloatingWindow();
-        registerTimerReceiver();
+        if (!initFloatingWindow()) {
+            stopSelf();
+            return;
+        }
+        timerBound = bindService(new Intent(this, TimerService.class), timerConnection, Context.BIND_AUTO_CREATE);
     }
 
-    private void initFloatingWindow() {
+    // 窗口无法添加 (没有悬浮窗权限) 时返回 false
+    private boolean initFloatingWindow() {
         windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
         floatingView = LayoutInflater.from(this).inflate(R.layout.floating_timer, null);
         floatingTimerText = floatingView.findViewById(R.id.floating_timer_text);
+        timerRows = floatingView.findViewById(R.id.floating_timer_rows);
+        lapRow = floatingView.findViewById(R.id.floating_lap_row);
+        lapName = floatingView.findViewById(R.id.floating_lap_name);
+        lapTime = floatingView.findViewById(R.id.floating_lap_time);
+        lapHistory = floatingView.findViewById(R.id.floating_lap_history);
+        floatingView.findViewById(R.id.floating_lap_button).setOnClickListener(v -> {
+            if (timerService != null) {
+                timerService.lap();
+            }
+        });
+        floatingView.getViewTreeObserver().addOnDrawListener(drawListener);
 
         // 读取保存的位置
-        android.content.SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        int x = prefs.getInt(PREF_X, 0);
-        int y = prefs.getInt(PREF_Y, 100);
+        settings = TimerSettings.get(this);
+        int x = settings.current().getWindowX();
+        int y = settings.current().getWindowY();
 
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+        params = new WindowManager.LayoutParams(
                 WindowManager.LayoutParams.WRAP_CONTENT,
                 WindowManager.LayoutParams.WRAP_CONTENT,
                 WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
@@ -57,6 +127,8 @@ public class FloatingWindowService extends Service {
         params.gravity = Gravity.TOP | Gravity.START;
         params.x = x;
         params.y = y;
+        targetX = x;
+        targetY = y;
         
         // 设置触摸监听
         floatingView.setOnTouchListener(new View.OnTouchListener() {
@@ -64,25 +136,27 @@ public class FloatingWindowService extends Service {
             public boolean onTouch(View v, MotionEvent event) {
                 switch (event.getAction()) {
                     case MotionEvent.ACTION_DOWN:
-                        initialX = params.x;
-                        initialY = params.y;
+                        handler.removeCallbacks(savePosition);
+                        // 上一次吸附可能还没应用到窗口, 以目标位置为准
+                        initialX = targetX;
+                        initialY = targetY;
                         initialTouchX = event.getRawX();
                         initialTouchY = event.getRawY();
                         return true;
 
                     case MotionEvent.ACTION_MOVE:
-                        params.x = initialX + (int) (event.getRawX() - initialTouchX);
-                        params.y = initialY + (int) (event.getRawY() - initialTouchY);
-                        windowManager.updateViewLayout(floatingView, params);
+                        moveTo(initialX + (int) (event.getRawX() - initialTouchX),
+                                initialY + (int) (event.getRawY() - initialTouchY));
                         return true;
 
                     case MotionEvent.ACTION_UP:
-                        // 保存位置
-                        android.content.SharedPreferences.Editor editor = 
-                            getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
-                        editor.putInt(PREF_X, params.x);
-                        editor.putInt(PREF_Y, params.y);
-                        editor.apply();
+                        if (targetX != initialX || targetY != initialY) {
+                            snapToEdge(targetX, targetY);
+                            positionSavePending = true;
+                        }
+                        if (positionSavePending) {
+                            handler.postDelayed(savePosition, SAVE_POSITION_DELAY_MS);
+                        }
 
                         // 如果移动距离很小，认为是点击事件
                         if (Math.abs(event.getRawX() - initialTouchX) < 10 &&
@@ -97,39 +171,179 @@ public class FloatingWindowService extends Service {
             }
         });
 
-        windowManager.addView(floatingView, params);
-    }
+        try {
+            windowManager.addView(floatingView, params);
+        } catch (WindowManager.BadTokenException | SecurityException e) {
+            e.printStackTrace();
+            floatingView = null;
+            BootPipeline.onOverlayFailed();
+            return false;
+        }
 
-    private void registerTimerReceiver() {
-        timerReceiver = new BroadcastReceiver() {
+        // 第一次绘制后通知开机流程悬浮窗已可见
+        floatingView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                if (TimerService.ACTION_TIME_UPDATE.equals(intent.getAction())) {
-                    long timeInMillis = intent.getLongExtra("time", 0);
-                    updateTimerDisplay(timeInMillis);
-                }
+            public boolean onPreDraw() {
+                floatingView.getViewTreeObserver().removeOnPreDrawListener(this);
+                floatingView.post(BootPipeline::onOverlayVisible);
+                return true;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 记录目标位置, 在下一帧统一更新窗口布局.
+     */
+    private void moveTo(int x, int y) {
+        targetX = x;
+        targetY = y;
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(layoutFrame);
+        }
+    }
+
+    private void applyTargetPosition() {
+        if (floatingView == null || (params.x == targetX && params.y == targetY)) {
+            return;
+        }
+        params.x = targetX;
+        params.y = targetY;
+        windowManager.updateViewLayout(floatingView, params);
+    }
+
+    /**
+     * 靠近屏幕边缘时吸附到边缘, 并限制在屏幕范围内.
+     */
+    private void snapToEdge(int x, int y) {
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        int snapDistance = (int) (SNAP_DISTANCE_DP * metrics.density);
+        int maxX = Math.max(0, metrics.widthPixels - floatingView.getWidth());
+        int maxY = Math.max(0, metrics.heightPixels - floatingView.getHeight());
+        x = snap(x, maxX, snapDistance);
+        y = snap(y, maxY, snapDistance);
+        moveTo(x, y);
+    }
+
+    private static int snap(int value, int max, int snapDistance) {
+        if (value < snapDistance) {
+            return 0;
+        }
+        if (value > max - snapDistance) {
+            return max;
+        }
+        return value;
+    }
+
+    private void savePosition() {
+        positionSavePending = false;
+        settings.edit().setWindowPosition(targetX, targetY).apply();
+    }
+
+    private void updateTimerRows() {
+        if (timerService == null) {
+            return;
+        }
+        int count = timerService.getTimerCount();
+        if (rowViews.length != count) {
+            createTimerRows(count);
+        }
+        for (int id = 0; id < count; id++) {
+            if (id == TimerService.TIMER_TRIP) {
+                continue;
+            }
+            // 只在停止和计时之间切换时改变可见性, 走秒不会触发布局
+            int visibility = timerService.getTimerState(id) == TimingEngine.STATE_STOPPED ? View.GONE : View.VISIBLE;
+            if (rowViews[id].getVisibility() != visibility) {
+                rowViews[id].setVisibility(visibility);
+            }
+            if (visibility == View.VISIBLE) {
+                rowTimes[id].setElapsedMillis(timerService.getTimerElapsedMillis(id));
+            }
+        }
+    }
+
+    private void createTimerRows(int count) {
+        timerRows.removeAllViews();
+        rowViews = new View[count];
+        rowTimes = new DigitTimerView[count];
+        LayoutInflater inflater = LayoutInflater.from(this);
+        for (int id = 0; id < count; id++) {
+            if (id == TimerService.TIMER_TRIP) {
+                continue;
             }
-        };
-        IntentFilter filter = new IntentFilter(TimerService.ACTION_TIME_UPDATE);
-        registerReceiver(timerReceiver, filter);
+            View row = inflater.inflate(R.layout.floating_timer_row, timerRows, false);
+            TextView name = row.findViewById(R.id.floating_timer_row_name);
+            name.setText(timerService.getTimerName(id));
+            rowViews[id] = row;
+            rowTimes[id] = row.findViewById(R.id.floating_timer_row_time);
+            timerRows.addView(row);
+        }
     }
 
     private void updateTimerDisplay(long timeInMillis) {
-        int hours = (int) (timeInMillis / 3600000);
-        int minutes = (int) ((timeInMillis % 3600000) / 60000);
-        int seconds = (int) ((timeInMillis % 60000) / 1000);
-        String timeString = String.format("%02d:%02d:%02d", hours, minutes, seconds);
-        floatingTimerText.setText(timeString);
+        if (timerService != null) {
+            pendingDrawTickNanos = timerService.getDeliveredTickNanos();
+            updateLapDisplay(timeInMillis);
+        }
+        floatingTimerText.setElapsedMillis(timeInMillis);
+    }
+
+    // 当前分段用时与总计时一起刷新; 分段数变化时才改文字
+    private void updateLapDisplay(long timeInMillis) {
+        boolean active = timerService.getTimerState(TimerService.TIMER_TRIP) != TimingEngine.STATE_STOPPED;
+        int visibility = active ? View.VISIBLE : View.GONE;
+        if (lapRow.getVisibility() != visibility) {
+            lapRow.setVisibility(visibility);
+        }
+        if (!active) {
+            lapHistory.setVisibility(View.GONE);
+            return;
+        }
+        long count = timerService.getLapCount();
+        if (count != shownLapCount) {
+            shownLapCount = count;
+            lapName.setText("分段 " + (count + 1));
+            showRecentSplits(count);
+        }
+        lapTime.setElapsedMillis(timeInMillis - timerService.getLastLapElapsedMillis());
+    }
+
+    // 最近完成的几个分段, 最新的在上
+    private void showRecentSplits(long count) {
+        long[] splits = timerService.getRecentSplits();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < splits.length; i++) {
+            lapFormatter.format(splits[i]);
+            if (i > 0) {
+                text.append('\n');
+            }
+            text.append("分段 ").append(count - i).append("  ").append(lapFormatter);
+        }
+        lapHistory.setText(text);
+        lapHistory.setVisibility(splits.length > 0 ? View.VISIBLE : View.GONE);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        Choreographer.getInstance().removeFrameCallback(layoutFrame);
+        handler.removeCallbacks(savePosition);
+        if (positionSavePending) {
+            savePosition();
+        }
         if (floatingView != null) {
+            floatingView.getViewTreeObserver().removeOnDrawListener(drawListener);
             windowManager.removeView(floatingView);
         }
-        if (timerReceiver != null) {
-            unregisterReceiver(timerReceiver);
+        if (timerService != null) {
+            timerService.removeTickListener(tickListener);
+            timerService.removeTimersListener(timersListener);
+            timerService = null;
+        }
+        if (timerBound) {
+            unbindService(timerConnection);
         }
     }
 
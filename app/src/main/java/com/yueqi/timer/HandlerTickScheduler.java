@@ -0,0 +1,21 @@
+package com.yueqi.timer;
+
+import android.os.Handler;
+
+public class HandlerTickScheduler implements TickScheduler {
+    private final Handler handler;
+
+    public HandlerTickScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        handler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
@@ -1,31 +1,127 @@
 package com.yueqi.timer;
 
-import android.content.BroadcastReceiver;
+import android.Manifest;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.SharedPreferences;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.provider.Settings;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
+import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
-    private TextView timerTextView;
+    private DigitTimerView timerTextView;
+    private TextView statsTextView;
+    private TextView perfStatsTextView;
     private Button startButton, pauseButton, stopButton, minimizeButton;
     private static final int OVERLAY_PERMISSION_REQUEST_CODE = 1;
-    private BroadcastReceiver timerReceiver;
-    private static final String PREFS_NAME = "TimerPrefs";
-    private static final String PREF_FIRST_RUN = "first_run";
-    private static final String PREF_AUTO_START_TIMER = "auto_start_timer";
-    private static final String PREF_AUTO_MINIMIZE = "auto_minimize";
+    private TimerService timerService;
+    // 0 停止, 1 计时中, 2 暂停; -1 表示尚未同步
+    private int lastTimerState = -1;
+    private final ElapsedTimeFormatter timeFormatter = new ElapsedTimeFormatter();
+    private final TimerService.TickListener tickListener = (elapsedMillis, running) -> {
+        updateTimerDisplay(elapsedMillis);
+        updatePerfStatsDisplay();
+        // 只在状态变化时更新按钮
+        int state = running ? 1 : (elapsedMillis > 0 ? 2 : 0);
+        if (state != lastTimerState) {
+            lastTimerState = state;
+            if (state == 2) {
+                startButton.setEnabled(false);
+                pauseButton.setEnabled(true);
+                stopButton.setEnabled(true);
+                pauseButton.setText("继续");
+            } else {
+                updateButtonStates(running);
+                pauseButton.setText("暂停");
+            }
+        }
+    };
+    private final Runnable rollupListener = this::updateStatsDisplay;
+    private final ServiceConnection timerConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            timerService = ((TimerService.LocalBinder) service).getService();
+            lastTimerState = -1;
+            timerService.addTickListener(tickListener);
+            timerService.addRollupListener(rollupListener);
+            updateStatsDisplay();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            timerService = null;
+        }
+    };
     private ActivityResultLauncher<Intent> overlayPermissionLauncher;
+    // Android 13 起需要运行时授权才能显示计时通知和驾驶提醒; 每个界面实例最多请求一次
+    private static final String STATE_NOTIFICATION_PERMISSION_REQUESTED = "notificationPermissionRequested";
+    private static final String STATE_TIMER_START_PENDING = "timerStartPending";
+    private ActivityResultLauncher<String> notificationPermissionLauncher;
+    private boolean notificationPermissionRequested;
+    // 等待授权结果后再开始计时
+    private boolean timerStartPending;
+    // 导出: 先选范围和格式, 再由 SAF 选择保存位置
+    private static final String[] EXPORT_RANGE_NAMES = {"全部", "近 7 天", "近 30 天", "近 365 天"};
+    private static final int[] EXPORT_RANGE_DAYS = {0, 7, 30, 365};
+    // 文件选择器在前台时界面可能重建, 格式由返回的启动器决定, 范围随实例状态保存
+    private static final String STATE_EXPORT_RANGE = "exportRange";
+    private ActivityResultLauncher<String> exportCsvLauncher;
+    private ActivityResultLauncher<String> exportJsonLauncher;
+    private int exportRange;
+    private TripExportTask exportTask;
+    private AlertDialog exportDialog;
+    private ProgressBar exportProgress;
+    private final TripExportTask.Callback exportCallback = new TripExportTask.Callback() {
+        @Override
+        public void onExportProgress(long scanned, long total) {
+            exportProgress.setProgress(total == 0 ? 0 : (int) (scanned * 1000 / total));
+        }
+
+        @Override
+        public void onExportFinished(long exported) {
+            finishExport(exported == 0 ? "没有可导出的记录" : "已导出 " + exported + " 条记录");
+        }
+
+        @Override
+        public void onExportCancelled() {
+            finishExport("已取消导出");
+        }
+
+        @Override
+        public void onExportFailed(Exception e) {
+            finishExport("导出失败");
+        }
+    };
+    // 保留策略: 天数和空间上限 (MB), 0 表示不限
+    private static final String[] RETENTION_NAMES = {"全部保留", "90 天", "1 年", "3 年", "最多 5 MB", "最多 20 MB"};
+    private static final int[] RETENTION_DAYS = {0, 90, 365, 3 * 365, 0, 0};
+    private static final int[] RETENTION_MAX_MB = {0, 0, 0, 0, 5, 20};
+    // 电源防抖: 接通/断开持续多久才开始/结束行程
+    private static final String[] POWER_DEBOUNCE_NAMES = {
+            "接通 3 秒, 断开 1 分钟 (默认)", "接通 3 秒, 断开 3 分钟", "接通 10 秒, 断开 5 分钟", "不防抖"};
+    private static final long[] POWER_CONNECT_DEBOUNCE_MS = {3_000, 3_000, 10_000, 0};
+    private static final long[] POWER_DISCONNECT_DEBOUNCE_MS = {60_000, 180_000, 300_000, 0};
+    private AlertDialog historyDialog;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,30 +139,91 @@ public class MainActivity extends AppCompatActivity {
             }
         );
 
+        notificationPermissionLauncher = registerForActivityResult(
+                new ActivityResultContracts.RequestPermission(), this::onNotificationPermissionResult);
+        exportCsvLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("text/csv"),
+                uri -> startExport(uri, TripExporter.FORMAT_CSV));
+        exportJsonLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/json"),
+                uri -> startExport(uri, TripExporter.FORMAT_JSON));
+        if (savedInstanceState != null) {
+            exportRange = savedInstanceState.getInt(STATE_EXPORT_RANGE);
+            notificationPermissionRequested = savedInstanceState.getBoolean(STATE_NOTIFICATION_PERMISSION_REQUESTED);
+            timerStartPending = savedInstanceState.getBoolean(STATE_TIMER_START_PENDING);
+        }
+
         initViews();
+        // 旋转等重建后接上仍在进行的导出, 恢复进度和取消按钮
+        exportTask = TripExportTask.current();
+        if (exportTask != null) {
+            showExportProgress();
+            exportTask.attach(exportCallback);
+        }
         checkPermissions();
-        registerTimerReceiver();
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // 查询计时器当前状态
-        Intent intent = new Intent(this, TimerService.class);
-        intent.setAction(TimerService.ACTION_GET_STATUS);
-        startService(intent);
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_EXPORT_RANGE, exportRange);
+        outState.putBoolean(STATE_NOTIFICATION_PERMISSION_REQUESTED, notificationPermissionRequested);
+        outState.putBoolean(STATE_TIMER_START_PENDING, timerStartPending);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // 绑定后会立即收到当前状态, 无需再查询
+        bindService(new Intent(this, TimerService.class), timerConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (timerService != null) {
+            timerService.removeTickListener(tickListener);
+            timerService.removeRollupListener(rollupListener);
+            timerService = null;
+        }
+        unbindService(timerConnection);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // 导出在后台线程继续完成, 界面重建后重新接上
+        if (exportTask != null) {
+            exportTask.detach();
+            exportTask = null;
+        }
+        if (exportDialog != null) {
+            exportDialog.dismiss();
+            exportDialog = null;
+        }
+        if (historyDialog != null) {
+            historyDialog.dismiss();
+            historyDialog = null;
+        }
     }
 
     private void initViews() {
         timerTextView = findViewById(R.id.timerTextView);
+        statsTextView = findViewById(R.id.statsTextView);
+        perfStatsTextView = findViewById(R.id.perfStatsTextView);
+        // 隐藏的调试面板, 长按计时数字切换
+        timerTextView.setOnLongClickListener(v -> {
+            perfStatsTextView.setVisibility(perfStatsTextView.getVisibility() == View.VISIBLE ? View.GONE : View.VISIBLE);
+            updatePerfStatsDisplay();
+            return true;
+        });
         startButton = findViewById(R.id.startButton);
         pauseButton = findViewById(R.id.pauseButton);
         stopButton = findViewById(R.id.stopButton);
         minimizeButton = findViewById(R.id.minimizeButton);
 
         // 检查是否是首次运行
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        boolean isFirstRun = prefs.getBoolean(PREF_FIRST_RUN, true);
+        TimerSettings settings = TimerSettings.get(this);
+        TimerSettings.Snapshot saved = settings.current();
+        boolean isFirstRun = saved.isFirstRun();
 
         TextView autoStartHint = findViewById(R.id.autoStartHint);
         Button settingsButton = findViewById(R.id.settingsButton);
@@ -77,7 +234,7 @@ public class MainActivity extends AppCompatActivity {
         
         // 只在首次运行时记录
         if (isFirstRun) {
-            prefs.edit().putBoolean(PREF_FIRST_RUN, false).apply();
+            settings.edit().setFirstRun(false).apply();
         }
 
         settingsButton.setOnClickListener(v -> openAutoStartSettings());
@@ -86,7 +243,7 @@ public class MainActivity extends AppCompatActivity {
         CheckBox autoStartTimerCheckBox = findViewById(R.id.autoStartTimerCheckBox);
         
         // 读取保存的自动计时设置
-        boolean autoStartTimer = prefs.getBoolean(PREF_AUTO_START_TIMER, false);
+        boolean autoStartTimer = saved.isAutoStartTimer();
         autoStartTimerCheckBox.setChecked(autoStartTimer);
         
         // 如果启用了自动计时，则立即开始计时
@@ -96,21 +253,36 @@ public class MainActivity extends AppCompatActivity {
 
         // 保存复选框状态
         autoStartTimerCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            prefs.edit().putBoolean(PREF_AUTO_START_TIMER, isChecked).apply();
+            settings.edit().setAutoStartTimer(isChecked).apply();
         });
 
         // 初始化自动最小化复选框
         CheckBox autoMinimizeCheckBox = findViewById(R.id.autoMinimizeCheckBox);
-        boolean autoMinimize = prefs.getBoolean(PREF_AUTO_MINIMIZE, false);
+        boolean autoMinimize = saved.isAutoMinimize();
         autoMinimizeCheckBox.setChecked(autoMinimize);
 
         // 保存自动最小化设置
         autoMinimizeCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            prefs.edit().putBoolean(PREF_AUTO_MINIMIZE, isChecked).apply();
+            settings.edit().setAutoMinimize(isChecked).apply();
+        });
+
+        // 外部应用的计时广播, 默认关闭
+        CheckBox broadcastTimeCheckBox = findViewById(R.id.broadcastTimeCheckBox);
+        broadcastTimeCheckBox.setChecked(saved.isBroadcastTimeUpdates());
+        broadcastTimeCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            settings.edit().setBroadcastTimeUpdates(isChecked).apply();
         });
 
+        // 车载设备上点火/熄火表现为电源接通/断开, 默认关闭
+        CheckBox powerSessionCheckBox = findViewById(R.id.powerSessionCheckBox);
+        powerSessionCheckBox.setChecked(saved.isPowerSession());
+        powerSessionCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            settings.edit().setPowerSession(isChecked).apply();
+        });
+        findViewById(R.id.powerDebounceButton).setOnClickListener(v -> showPowerDebounceOptions());
+
         // 如果设置了自动最小化，立即最小化
-        if (autoMinimize && prefs.getBoolean(PREF_AUTO_START_TIMER, false)) {
+        if (autoMinimize && autoStartTimer) {
             startService(new Intent(this, FloatingWindowService.class));
             moveTaskToBack(true);
         }
@@ -136,6 +308,10 @@ public class MainActivity extends AppCompatActivity {
             updateButtonStates(false);
         });
 
+        findViewById(R.id.historyButton).setOnClickListener(v -> showHistory());
+        findViewById(R.id.exportButton).setOnClickListener(v -> showExportOptions());
+        findViewById(R.id.retentionButton).setOnClickListener(v -> showRetentionOptions());
+
         minimizeButton.setOnClickListener(v -> {
             startService(new Intent(this, FloatingWindowService.class));
             moveTaskToBack(true);
@@ -150,7 +326,40 @@ public class MainActivity extends AppCompatActivity {
         stopButton.setEnabled(isRunning);
     }
 
+    // 先请求通知权限, 有结果后再检查悬浮窗权限, 避免两个请求叠在一起
     private void checkPermissions() {
+        if (needsNotificationPermission()) {
+            requestNotificationPermission();
+        } else {
+            checkOverlayPermission();
+        }
+    }
+
+    private boolean needsNotificationPermission() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED;
+    }
+
+    private void requestNotificationPermission() {
+        if (!notificationPermissionRequested) {
+            notificationPermissionRequested = true;
+            notificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
+        }
+    }
+
+    private void onNotificationPermissionResult(boolean granted) {
+        if (!granted) {
+            // 拒绝后照常计时, 前台服务仍在运行, 只是通知栏不显示
+            Toast.makeText(this, "未允许通知, 通知栏计时和驾驶提醒将不会显示", Toast.LENGTH_LONG).show();
+        }
+        if (timerStartPending) {
+            timerStartPending = false;
+            sendStartTimer();
+        }
+        checkOverlayPermission();
+    }
+
+    private void checkOverlayPermission() {
         // 检查悬浮窗权限
         if (!Settings.canDrawOverlays(this)) {
             Intent intent = new Intent(Settings.ACTION_MANAGE_OVERLAY_PERMISSION,
@@ -160,35 +369,178 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void registerTimerReceiver() {
-        timerReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                if (TimerService.ACTION_TIME_UPDATE.equals(intent.getAction())) {
-                    long timeInMillis = intent.getLongExtra("time", 0);
-                    updateTimerDisplay(timeInMillis);
-                    
-                    // 更新按钮状态
-                    if (intent.hasExtra(TimerService.EXTRA_IS_RUNNING)) {
-                        boolean isRunning = intent.getBooleanExtra(TimerService.EXTRA_IS_RUNNING, false);
-                        updateButtonStates(isRunning);
-                        if (isRunning) {
-                            pauseButton.setText("暂停");
-                        }
-                    }
-                }
+    private void updateTimerDisplay(long timeInMillis) {
+        timerTextView.setElapsedMillis(timeInMillis);
+    }
+
+    // 已结束会话的汇总, 只在绑定和汇总更新时刷新
+    private void updateStatsDisplay() {
+        if (timerService == null) {
+            return;
+        }
+        DrivingRollups rollups = timerService.getRollups();
+        int today = rollups.dayKey(System.currentTimeMillis());
+        int week = DrivingRollups.weekKey(today);
+        int month = DrivingRollups.monthKey(today);
+        StringBuilder text = new StringBuilder();
+        text.append("今日 ");
+        appendDuration(text, rollups.totalForDays(today, today));
+        text.append("  本周 ");
+        appendDuration(text, rollups.totalForWeeks(week, week));
+        text.append("  本月 ");
+        appendDuration(text, rollups.totalForMonths(month, month));
+        text.append("  今日最长连续 ");
+        appendDuration(text, rollups.longestStretch(today, today));
+        statsTextView.setText(text);
+    }
+
+    // 面板可见时随每秒的 tick 刷新
+    private void updatePerfStatsDisplay() {
+        if (timerService == null || perfStatsTextView.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        perfStatsTextView.setText(timerService.getPerfStats().format(false));
+    }
+
+    private void appendDuration(StringBuilder text, long millis) {
+        int length = timeFormatter.format(millis);
+        text.append(timeFormatter.getBuffer(), 0, length);
+    }
+
+    // 只创建可见的行, 记录在后台按页读取
+    private void showHistory() {
+        if (historyDialog != null) {
+            return;
+        }
+        View view = getLayoutInflater().inflate(R.layout.dialog_trip_history, null);
+        RecyclerView recyclerView = view.findViewById(R.id.historyRecyclerView);
+        TextView emptyText = view.findViewById(R.id.historyEmptyTextView);
+        TripHistoryAdapter adapter = new TripHistoryAdapter();
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setAdapter(adapter);
+        historyDialog = new AlertDialog.Builder(this)
+                .setTitle("行程记录")
+                .setView(view)
+                .setNegativeButton("关闭", null)
+                .show();
+        // 关闭时丢弃缓存的页
+        historyDialog.setOnDismissListener(dialog -> {
+            adapter.close();
+            historyDialog = null;
+        });
+        adapter.open(TripHistory.get(this).getWriter(), count -> {
+            if (count == 0) {
+                emptyText.setText("暂无行程记录");
+            } else {
+                emptyText.setVisibility(View.GONE);
             }
-        };
-        IntentFilter filter = new IntentFilter(TimerService.ACTION_TIME_UPDATE);
-        registerReceiver(timerReceiver, filter);
+        });
     }
 
-    private void updateTimerDisplay(long timeInMillis) {
-        int hours = (int) (timeInMillis / 3600000);
-        int minutes = (int) ((timeInMillis % 3600000) / 60000);
-        int seconds = (int) ((timeInMillis % 60000) / 1000);
-        String timeString = String.format("%02d:%02d:%02d", hours, minutes, seconds);
-        timerTextView.setText(timeString);
+    private void showExportOptions() {
+        if (exportTask != null) {
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("导出行程记录")
+                .setSingleChoiceItems(EXPORT_RANGE_NAMES, exportRange, (dialog, which) -> exportRange = which)
+                .setPositiveButton("CSV", (dialog, which) -> chooseExportFile(TripExporter.FORMAT_CSV))
+                .setNeutralButton("JSON", (dialog, which) -> chooseExportFile(TripExporter.FORMAT_JSON))
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    // 清理在后台维护任务 (充电或空闲时) 中进行
+    private void showRetentionOptions() {
+        TimerSettings settings = TimerSettings.get(this);
+        TimerSettings.Snapshot current = settings.current();
+        int checked = 0;
+        for (int i = 0; i < RETENTION_NAMES.length; i++) {
+            if (RETENTION_DAYS[i] == current.getRetentionDays()
+                    && RETENTION_MAX_MB[i] == current.getRetentionMaxMb()) {
+                checked = i;
+                break;
+            }
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("行程记录保留")
+                .setSingleChoiceItems(RETENTION_NAMES, checked, (dialog, which) -> {
+                    settings.edit().setRetention(RETENTION_DAYS[which], RETENTION_MAX_MB[which]).apply();
+                    dialog.dismiss();
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    // 下一次电源事件起生效
+    private void showPowerDebounceOptions() {
+        TimerSettings settings = TimerSettings.get(this);
+        TimerSettings.Snapshot current = settings.current();
+        int checked = -1;
+        for (int i = 0; i < POWER_DEBOUNCE_NAMES.length; i++) {
+            if (POWER_CONNECT_DEBOUNCE_MS[i] == current.getPowerConnectDebounceMillis()
+                    && POWER_DISCONNECT_DEBOUNCE_MS[i] == current.getPowerDisconnectDebounceMillis()) {
+                checked = i;
+                break;
+            }
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("电源防抖")
+                .setSingleChoiceItems(POWER_DEBOUNCE_NAMES, checked, (dialog, which) -> {
+                    settings.edit()
+                            .setPowerDebounce(POWER_CONNECT_DEBOUNCE_MS[which], POWER_DISCONNECT_DEBOUNCE_MS[which])
+                            .apply();
+                    dialog.dismiss();
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    private void chooseExportFile(int format) {
+        String name = "CarTimer-" + new SimpleDateFormat("yyyyMMdd-HHmm", Locale.US).format(new Date());
+        if (format == TripExporter.FORMAT_CSV) {
+            exportCsvLauncher.launch(name + ".csv");
+        } else {
+            exportJsonLauncher.launch(name + ".json");
+        }
+    }
+
+    private void startExport(Uri uri, int format) {
+        // 用户取消了文件选择
+        if (uri == null || exportTask != null) {
+            return;
+        }
+        int days = EXPORT_RANGE_DAYS[exportRange];
+        long from = days == 0 ? Long.MIN_VALUE : System.currentTimeMillis() - days * 24 * 3600 * 1000L;
+        exportTask = TripExportTask.start(this, uri, format, from, Long.MAX_VALUE, exportCallback);
+        showExportProgress();
+    }
+
+    private void showExportProgress() {
+        exportProgress = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        exportProgress.setMax(1000);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        exportProgress.setPadding(padding, padding, padding, 0);
+        exportDialog = new AlertDialog.Builder(this)
+                .setTitle("正在导出")
+                .setView(exportProgress)
+                .setCancelable(false)
+                .setNegativeButton("取消", (dialog, which) -> {
+                    if (exportTask != null) {
+                        exportTask.cancel();
+                    }
+                })
+                .show();
+    }
+
+    private void finishExport(String message) {
+        exportTask = null;
+        if (exportDialog != null) {
+            exportDialog.dismiss();
+            exportDialog = null;
+        }
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
 
     private void openAutoStartSettings() {
@@ -204,17 +556,22 @@ public class MainActivity extends AppCompatActivity {
 
     // 提取开始计时的逻辑为单独的方法
     private void startTimer() {
+        // 第一次开始计时前先请求通知权限, 结果回来后再启动前台服务
+        if (needsNotificationPermission() && !notificationPermissionRequested) {
+            timerStartPending = true;
+            requestNotificationPermission();
+            updateButtonStates(true);
+            return;
+        }
+        if (!timerStartPending) {
+            sendStartTimer();
+        }
+    }
+
+    private void sendStartTimer() {
         Intent intent = new Intent(this, TimerService.class);
         intent.setAction(TimerService.ACTION_START);
         startService(intent);
         updateButtonStates(true);
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (timerReceiver != null) {
-            unregisterReceiver(timerReceiver);
-        }
-    }
 } 
\ No newline at end of file
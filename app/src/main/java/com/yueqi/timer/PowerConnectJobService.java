@@ -0,0 +1,24 @@
+package com.yueqi.timer;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+
+/**
+ * 行程因断电结束后安排的一次性任务, 开始充电时运行, 代替 Android 8.0 起收不到的电源接通广播.
+ */
+public class PowerConnectJobService extends JobService {
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        PowerSession session = PowerSession.get(this);
+        if (session.isEnabled()) {
+            // 任务在满足充电条件后才运行, 不需要再防抖; 进程随后可能退出, 不能等待延迟任务
+            session.onPowerConfirmed();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return false;
+    }
+}
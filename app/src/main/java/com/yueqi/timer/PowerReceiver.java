@@ -0,0 +1,46 @@
+package com.yueqi.timer;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/**
+ * 电源接通/断开和关机广播. Android 8.0 以下由清单注册; 8.0 起由计时服务在运行期间动态注册.
+ */
+public class PowerReceiver extends BroadcastReceiver {
+    private static final String ACTION_QUICKBOOT_POWEROFF = "android.intent.action.QUICKBOOT_POWEROFF";
+
+    public static IntentFilter createFilter() {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        filter.addAction(Intent.ACTION_SHUTDOWN);
+        filter.addAction(ACTION_QUICKBOOT_POWEROFF);
+        return filter;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        PowerSession session = PowerSession.get(context);
+        if (!session.isEnabled() || intent.getAction() == null) {
+            return;
+        }
+        switch (intent.getAction()) {
+            case Intent.ACTION_POWER_CONNECTED:
+                session.onPowerConnected();
+                break;
+            case Intent.ACTION_POWER_DISCONNECTED:
+                session.onPowerDisconnected();
+                break;
+            case Intent.ACTION_SHUTDOWN:
+            case ACTION_QUICKBOOT_POWEROFF:
+                if (session.isSessionActive()) {
+                    // 行驶中关机时行程保留到开机后, 先把检查点和日志写出
+                    context.startService(new Intent(context, TimerService.class)
+                            .setAction(TimerService.ACTION_SHUTDOWN));
+                }
+                session.onShutdown();
+                break;
+        }
+    }
+}
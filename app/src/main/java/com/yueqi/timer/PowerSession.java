@@ -0,0 +1,162 @@
+package com.yueqi.timer;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * 把电源, 开机和关机事件交给 {@link SessionStateMachine}, 并执行它的决定:
+ * 开始行程时走 {@link BootPipeline} 启动计时服务和悬浮窗, 结束行程时停止计时,
+ * 退出前台服务并关闭悬浮窗, 两次驾驶之间不占用 CPU 和内存.
+ * 进程内唯一, 只在主线程使用.
+ */
+public final class PowerSession implements SessionStateMachine.Listener {
+    private static final String TAG = "PowerSession";
+    private static final int JOB_ID_POWER_CONNECTED = 1003;
+
+    private static PowerSession instance;
+
+    private final Context context;
+    private final TimerSettings settings;
+    private final SessionStateMachine machine;
+
+    private PowerSession(Context context) {
+        this.context = context;
+        settings = TimerSettings.get(context);
+        TimerSettings.Snapshot s = settings.current();
+        // 熄火后车机可能很快进入深度睡眠, 断电确认用会唤醒设备的闹钟, 不用停走的 Handler 延迟
+        machine = new SessionStateMachine(new AlarmTickScheduler(context, new Handler(Looper.getMainLooper()), TAG),
+                s.getPowerConnectDebounceMillis(), s.getPowerDisconnectDebounceMillis());
+        machine.setListener(this);
+    }
+
+    public static PowerSession get(Context context) {
+        if (instance == null) {
+            instance = new PowerSession(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public static boolean isPowered(Context context) {
+        // 粘性广播, 传 null 只读取当前值
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    public boolean isEnabled() {
+        return settings.current().isPowerSession();
+    }
+
+    public boolean isSessionActive() {
+        return machine.isSessionActive();
+    }
+
+    public void onPowerConnected() {
+        if (prepare()) {
+            machine.onPowerConnected();
+        }
+    }
+
+    public void onPowerDisconnected() {
+        if (prepare()) {
+            machine.onPowerDisconnected();
+        }
+    }
+
+    /**
+     * 系统已确认在充电, 跳过接通防抖.
+     */
+    public void onPowerConfirmed() {
+        if (prepare()) {
+            machine.onPowerConfirmed();
+        }
+    }
+
+    public void onBoot() {
+        if (prepare()) {
+            machine.onBoot(isPowered(context));
+        }
+    }
+
+    public void onShutdown() {
+        if (prepare()) {
+            machine.onShutdown();
+        }
+    }
+
+    /**
+     * 计时服务 (可能在进程重建后) 恢复了未结束的行程. 状态机不知道这次行程时接上它,
+     * 此时已断电则开始等待断电确认.
+     */
+    public void onSessionRestored() {
+        if (!isEnabled() || machine.isSessionActive()) {
+            return;
+        }
+        machine.restore(true);
+        if (!isPowered(context)) {
+            prepare();
+            machine.onPowerDisconnected();
+        }
+    }
+
+    // 每次事件前读取最新的防抖设置
+    private boolean prepare() {
+        TimerSettings.Snapshot s = settings.current();
+        if (!s.isPowerSession()) {
+            return false;
+        }
+        machine.setDebounce(s.getPowerConnectDebounceMillis(), s.getPowerDisconnectDebounceMillis());
+        return true;
+    }
+
+    @Override
+    public void onSessionStart() {
+        Log.i(TAG, "session start");
+        cancelConnectJob();
+        BootPipeline.start(context, settings.current().isAutoMinimize());
+    }
+
+    @Override
+    public void onSessionEnd(int reason) {
+        Log.i(TAG, "session end, reason " + reason);
+        context.stopService(new Intent(context, FloatingWindowService.class));
+        // 计时服务在行程中一直在前台运行, 这里不会从后台新建服务
+        context.startService(new Intent(context, TimerService.class)
+                .setAction(TimerService.ACTION_END_SESSION));
+        if (reason == SessionStateMachine.END_POWER_LOST) {
+            scheduleConnectJob();
+        }
+    }
+
+    /**
+     * Android 8.0 起清单中注册的接收器收不到电源接通广播, 进程退出后改由要求充电的任务唤醒.
+     */
+    private void scheduleConnectJob() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler != null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_POWER_CONNECTED,
+                    new ComponentName(context, PowerConnectJobService.class))
+                    .setRequiresCharging(true)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    private void cancelConnectJob() {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler != null) {
+            scheduler.cancel(JOB_ID_POWER_CONNECTED);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.yueqi.timer;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import androidx.core.app.NotificationCompat;
+
+/**
+ * 前台服务通知. 计时中由系统 Chronometer 渲染时间, 只在开始/暂停/继续/结束时重新发布.
+ * Builder 和 PendingIntent 只创建一次. 驾驶提醒使用单独的高优先级渠道.
+ */
+public class TimerNotifier {
+    public static final String CHANNEL_ID = "timer_channel";
+    public static final int NOTIFICATION_ID = 1;
+    public static final String ALERT_CHANNEL_ID = "timer_alert_channel";
+    // 每条提醒规则一个通知, 同一规则重复触发时替换
+    private static final int ALERT_NOTIFICATION_ID_BASE = 100;
+
+    private final NotificationManager manager;
+    private final NotificationCompat.Builder builder;
+    private final NotificationCompat.Builder alertBuilder;
+    private final PendingIntent lapIntent;
+    private final ElapsedTimeFormatter timeFormatter = new ElapsedTimeFormatter();
+    // 本次会话发布通知的次数, 包括 startForeground
+    private int notifyCount;
+
+    public TimerNotifier(Context context) {
+        manager = context.getSystemService(NotificationManager.class);
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "计时器服务",
+                    NotificationManager.IMPORTANCE_LOW);
+            manager.createNotificationChannel(channel);
+            NotificationChannel alertChannel = new NotificationChannel(
+                    ALERT_CHANNEL_ID,
+                    "驾驶提醒",
+                    NotificationManager.IMPORTANCE_HIGH);
+            manager.createNotificationChannel(alertChannel);
+        }
+
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
+                notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+        lapIntent = PendingIntent.getService(context, 1,
+                new Intent(context, TimerService.class).setAction(TimerService.ACTION_LAP),
+                PendingIntent.FLAG_IMMUTABLE);
+        builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.timer)
+                .setContentIntent(pendingIntent)
+                .setCategory(NotificationCompat.CATEGORY_STOPWATCH)
+                .setOnlyAlertOnce(true)
+                .setOngoing(true);
+        alertBuilder = new NotificationCompat.Builder(context, ALERT_CHANNEL_ID)
+                .setSmallIcon(R.mipmap.timer)
+                .setContentIntent(pendingIntent)
+                .setCategory(NotificationCompat.CATEGORY_REMINDER)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true);
+    }
+
+    public Notification build(long elapsedMillis, boolean running) {
+        if (running) {
+            // when 是墙上时间, 系统据此自行走秒
+            builder.setContentTitle("计时器正在运行")
+                    .setContentText(null)
+                    .setWhen(System.currentTimeMillis() - elapsedMillis)
+                    .setShowWhen(true)
+                    .setUsesChronometer(true)
+                    .clearActions()
+                    .addAction(0, "分段", lapIntent);
+        } else {
+            timeFormatter.format(elapsedMillis);
+            builder.setContentTitle(elapsedMillis > 0 ? "计时已暂停" : "计时已结束")
+                    .setContentText(timeFormatter.toString())
+                    .setShowWhen(false)
+                    .setUsesChronometer(false)
+                    .clearActions();
+            if (elapsedMillis > 0) {
+                // 暂停中也可以分段
+                builder.addAction(0, "分段", lapIntent);
+            }
+        }
+        notifyCount++;
+        return builder.build();
+    }
+
+    public void update(long elapsedMillis, boolean running) {
+        manager.notify(NOTIFICATION_ID, build(elapsedMillis, running));
+    }
+
+    public void showAlert(int rule, String message, long elapsedMillis) {
+        timeFormatter.format(elapsedMillis);
+        alertBuilder.setContentTitle(message)
+                .setContentText(timeFormatter.toString())
+                .setWhen(System.currentTimeMillis());
+        manager.notify(ALERT_NOTIFICATION_ID_BASE + rule, alertBuilder.build());
+    }
+
+    public int getNotifyCount() {
+        return notifyCount;
+    }
+
+    public void resetNotifyCount() {
+        notifyCount = 0;
+    }
+}
@@ -1,18 +1,43 @@
 package com.yueqi.timer;
 
 import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.IntentFilter;
+import android.os.Binder;
+import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.IBinder;
-import androidx.core.app.NotificationCompat;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 计时服务. 线程模型:
+ * <ul>
+ * <li>计时核心 (engine, alertScheduler, 日志, 检查点和通知) 只在 "TimerCore" 线程上访问, 字段不加锁.
+ * engine 等在 onCreate 中创建后通过 Handler 消息交给计时线程, 此后主线程不再直接访问.</li>
+ * <li>监听器列表和 BootPipeline 只在主线程访问. 计时线程每次 tick 只投递一个可复用的 Runnable 到主线程,
+ * 由它回调监听器.</li>
+ * <li>其他线程通过 {@link #timersSnapshot} 读取计时状态. 计时线程在任一计时器状态变化后发布新的
+ * 不可变快照 (volatile 引用), 读取方用 elapsedRealtime 自行计算走过的时间, 不需要锁.</li>
+ * <li>公开的控制方法投递到计时线程执行, 立即返回; 结果通过监听器回调体现.</li>
+ * </ul>
+ */
 public class TimerService extends Service {
     public static final String ACTION_START = "com.yueqi.timer.ACTION_START";
     public static final String ACTION_PAUSE = "com.yueqi.timer.ACTION_PAUSE";
@@ -20,15 +45,148 @@ public class TimerService extends Service {
     public static final String ACTION_TIME_UPDATE = "com.yueqi.timer.ACTION_TIME_UPDATE";
     public static final String ACTION_RESUME = "com.yueqi.timer.ACTION_RESUME";
     public static final String ACTION_GET_STATUS = "com.yueqi.timer.ACTION_GET_STATUS";
+    // 由 PowerSession 发出: 熄火后结束行程并退出服务; 关机前写出检查点
+    public static final String ACTION_END_SESSION = "com.yueqi.timer.ACTION_END_SESSION";
+    public static final String ACTION_SHUTDOWN = "com.yueqi.timer.ACTION_SHUTDOWN";
+    // 在当前行程计时处分段, 来自通知按钮和悬浮窗
+    public static final String ACTION_LAP = "com.yueqi.timer.ACTION_LAP";
     public static final String EXTRA_IS_RUNNING = "is_running";
 
+    // 预置计时器的编号, 行程即主计时
+    public static final int TIMER_TRIP = TimingEngine.PRIMARY;
+    // 自上次休息以来的连续驾驶时间
+    public static final int TIMER_CONTINUOUS = 1;
+    // 本次行程中累计停车时间
+    public static final int TIMER_PARKING = 2;
+    // 当前这一站的停留时间
+    public static final int TIMER_DWELL = 3;
+
+    /**
+     * 进程内的计时回调, 在主线程调用. 每个显示秒数或运行状态变化时最多回调一次.
+     */
+    public interface TickListener {
+        void onTick(long elapsedMillis, boolean running);
+    }
+
+    /**
+     * 多计时器的回调, 在主线程调用. 每次共享 tick 和任一计时器状态变化时回调,
+     * 通过 {@link #getTimerElapsedMillis(int)} 等方法读取各计时器.
+     */
+    public interface TimersListener {
+        void onTimersTick();
+    }
+
+    public class LocalBinder extends Binder {
+        public TimerService getService() {
+            return TimerService.this;
+        }
+    }
+
+    private static final String TAG = "TimerService";
+    public static final String CHECKPOINT_FILE = "checkpoint.bin";
+    // 计时中定期写检查点, 只影响重启设备后能恢复到的精度
+    private static final long CHECKPOINT_INTERVAL_MS = 60_000;
+    private static final long MINUTE_MS = 60_000;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    // 自适应 tick: 有可见的界面时逐秒; 只有通知 (由系统 Chronometer 走秒) 时只为写检查点低频唤醒;
+    // 屏幕关闭时不调度 tick, 走过的时间在需要时计算
+    private static final long TICK_VISIBLE_MS = 1000;
+    private static final long TICK_NOTIFICATION_ONLY_MS = CHECKPOINT_INTERVAL_MS;
+    private static final long TICK_NONE = 0;
+    // 熄屏不调度 tick 时, 计时中仍以较低频率写检查点, 限制断电或重启后丢失的时间
+    private static final long SCREEN_OFF_CHECKPOINT_INTERVAL_MS = 5 * MINUTE_MS;
+    // 停留至少这么久才算休息, 之后连续驾驶重新计时
+    private static final long BREAK_MILLIS = 15 * MINUTE_MS;
+    // 提醒闹钟最多延后这么久
+    private static final long ALERT_WINDOW_MS = MINUTE_MS;
+
+    // 主线程, 只用于回调监听器
     private final Handler handler;
-    private long startTime;
-    private long elapsedTime;
-    private boolean isRunning;
-    private Runnable timerRunnable;
-    private static final String CHANNEL_ID = "timer_channel";
-    private static final int NOTIFICATION_ID = 1;
+    private HandlerThread timingThread;
+    private Handler timingHandler;
+    // 进程内共享的行程日志和汇总, 自身线程安全, onCreate 中赋值后不再改变
+    private TripHistory tripHistory;
+    private TripLogWriter tripLogWriter;
+    private RollupIndex rollupIndex;
+    // 以下字段只在计时线程访问
+    private TimingEngine engine;
+    private AlertScheduler alertScheduler;
+    private TimerNotifier notifier;
+    private CheckpointJournal checkpointJournal;
+    private final CheckpointJournal.Snapshot checkpoint = new CheckpointJournal.Snapshot();
+    private long lastCheckpointMillis;
+    // 熄屏期间的检查点用会唤醒设备的闹钟, 深度睡眠中也照常写
+    private AlarmTickScheduler checkpointAlarm;
+    private boolean screenOffCheckpoints;
+    private boolean screenOffCheckpointPending;
+    private final Runnable screenOffCheckpoint = () -> {
+        screenOffCheckpointPending = false;
+        writeCheckpoint();
+        updateScreenOffCheckpoint();
+    };
+    private int bootCount;
+    private final TripRecord tripRecord = new TripRecord();
+    // 当前会话开始时的墙上时间, 作为行程日志中的会话标识
+    private long sessionId;
+    private long sessionWakeupsStart;
+    // 内存中只保留最近的分段, 全部分段都写入行程日志
+    private static final int LAP_CAPACITY = 256;
+    // 悬浮窗显示的已完成分段数
+    private static final int RECENT_SPLITS = 3;
+    private final LapRing laps = new LapRing(LAP_CAPACITY);
+    private long lastBroadcastSecond = -1;
+    private boolean lastBroadcastRunning;
+
+    // 计时线程写, 任意线程读
+    private volatile TimerBank.Snapshot timersSnapshot;
+    private volatile long lastLapElapsedMillis;
+    private volatile long lapCount;
+    private volatile long[] recentSplits = new long[0];
+    private volatile boolean broadcastEnabled;
+    private final AtomicBoolean uiUpdatePending = new AtomicBoolean();
+    // 投递 uiUpdate 时的 System.nanoTime(), 用于统计 tick 到界面的延迟
+    private volatile long uiRequestNanos;
+    private final PerfStats perfStats = new PerfStats();
+
+    // 以下字段只在主线程访问
+    private final IBinder binder = new LocalBinder();
+    private final List<TickListener> tickListeners = new ArrayList<>();
+    private final List<TimersListener> timersListeners = new ArrayList<>();
+    private final List<Runnable> rollupListeners = new ArrayList<>();
+    private long lastDispatchedSecond = -1;
+    private boolean lastDispatchedRunning;
+    private final Runnable uiUpdate = this::deliverUiUpdate;
+    private final Runnable timerReady = () -> BootPipeline.onTimerReady(this);
+    private long deliveredTickNanos;
+    private boolean screenOn;
+    private long tickMode = -1;
+    private TimerSettings settings;
+    // 外部应用需要 ACTION_TIME_UPDATE 广播时才开启, 进程内组件使用 TickListener
+    private final TimerSettings.Listener settingsListener = current -> {
+        if (current.isBroadcastTimeUpdates() != broadcastEnabled) {
+            broadcastEnabled = current.isBroadcastTimeUpdates();
+            updateTickMode();
+        }
+    };
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            screenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+            updateTickMode();
+        }
+    };
+    private PowerReceiver powerReceiver;
+    // 系统时间被修改后, 通知里的 Chronometer 基准需要重新设置
+    private final BroadcastReceiver timeChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            timingHandler.post(() -> {
+                if (engine.isRunning()) {
+                    updateNotification();
+                }
+            });
+        }
+    };
 
     public TimerService() {
         handler = new Handler(Looper.getMainLooper());
@@ -37,132 +195,664 @@ public class TimerService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
-        createNotificationChannel();
-        timerRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isRunning) {
-                    elapsedTime = System.currentTimeMillis() - startTime;
-                    broadcastTime();
-                    updateNotification();
-                    handler.postDelayed(this, 1000);
+        // 比普通后台线程优先级高, 不与 UI 线程争抢同一个消息队列
+        timingThread = new HandlerThread("TimerCore", Process.THREAD_PRIORITY_DISPLAY);
+        timingThread.start();
+        timingHandler = new Handler(timingThread.getLooper());
+        notifier = new TimerNotifier(this);
+        // 日志和汇总属于进程, 服务重建时不重新打开
+        tripHistory = TripHistory.get(this);
+        perfStats.setTripLogDrops(tripHistory.getWriter()::getDroppedCount);
+        tripLogWriter = tripHistory.getWriter();
+        rollupIndex = tripHistory.getRollupIndex();
+        rollupIndex.setChangeListener(() -> handler.post(() -> {
+            for (int i = rollupListeners.size() - 1; i >= 0; i--) {
+                rollupListeners.get(i).run();
+            }
+        }));
+        TripLogMaintenanceService.schedule(this);
+        checkpointAlarm = new AlarmTickScheduler(this, timingHandler, "TimerCheckpoint");
+        // 使用 elapsedRealtime 作为单调时钟, 系统校时不会影响计时
+        engine = new TimingEngine(SystemClock::elapsedRealtime, new HandlerTickScheduler(timingHandler));
+        engine.getTimers().setName(TIMER_TRIP, "行程");
+        engine.addTimer("连续驾驶");
+        engine.addTimer("停车");
+        engine.addTimer("本次停留");
+        // 提醒按各计时器走过的时间触发, 暂停会顺延; 只在最早的提醒到期时唤醒.
+        // 熄屏时没有 tick, 深度睡眠中 Handler 停走, 所以用会唤醒设备的闹钟
+        alertScheduler = new AlertScheduler(engine, SystemClock::elapsedRealtime,
+                new AlarmTickScheduler(this, timingHandler, "TimerAlert", ALERT_WINDOW_MS));
+        alertScheduler.setCallback((rule, elapsedMillis) -> {
+            perfStats.recordNotify();
+            notifier.showAlert(rule, alertScheduler.getMessage(rule), elapsedMillis);
+        });
+        alertScheduler.addRule(TIMER_CONTINUOUS, 2 * HOUR_MS, 0, "已连续驾驶 2 小时, 请休息");
+        alertScheduler.addRule(TIMER_TRIP, 4 * HOUR_MS, 30 * MINUTE_MS, "行程已超过 4 小时");
+        alertScheduler.addRule(TIMER_DWELL, HOUR_MS, 0, "本次停车已超过 1 小时");
+        engine.setStateListener((id, state) -> {
+            alertScheduler.onStateChanged(id, state);
+            tripHistory.setTicking(engine.isRunning());
+            publishSnapshot();
+            updateScreenOffCheckpoint();
+            if (id == TIMER_TRIP) {
+                // 小部件的 Chronometer 自己走秒, 只在状态变化时推送
+                TimerWidgetProvider.update(this, state, engine.getAccumulatedMillis(),
+                        engine.getAnchorMillis(), engine.getElapsedMillis());
+            }
+        });
+        engine.setListener((elapsedMillis, running) -> {
+            onEngineTick(elapsedMillis, running);
+            if (running && SystemClock.elapsedRealtime() - lastCheckpointMillis >= CHECKPOINT_INTERVAL_MS) {
+                writeCheckpoint();
+            }
+        });
+        engine.setTickProbe(perfStats::recordTick);
+        publishSnapshot();
+        bootCount = Settings.Global.getInt(getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+        // 恢复检查点需要读文件, 在计时线程上进行; 之后的命令按顺序排在它后面
+        timingHandler.post(() -> {
+            File checkpointFile = new File(getFilesDir(), CHECKPOINT_FILE);
+            restoreCheckpoint(checkpointFile);
+            try {
+                checkpointJournal = new CheckpointJournal(checkpointFile);
+                if (engine.getState() != TimingEngine.STATE_STOPPED) {
+                    writeCheckpoint();
+                    handler.post(() -> PowerSession.get(this).onSessionRestored());
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        };
+        });
+        registerReceiver(timeChangedReceiver, new IntentFilter(Intent.ACTION_TIME_CHANGED));
+
+        settings = TimerSettings.get(this);
+        broadcastEnabled = settings.current().isBroadcastTimeUpdates();
+        settings.addListener(settingsListener);
+
+        screenOn = getSystemService(PowerManager.class).isInteractive();
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(screenReceiver, screenFilter);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // 8.0 起清单中注册的接收器收不到这些广播, 行程中由服务接收
+            powerReceiver = new PowerReceiver();
+            registerReceiver(powerReceiver, PowerReceiver.createFilter());
+        }
+        updateTickMode();
     }
 
-    private void createNotificationChannel() {
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                    CHANNEL_ID,
-                    "计时器服务",
-                    NotificationManager.IMPORTANCE_LOW);
-            NotificationManager manager = getSystemService(NotificationManager.class);
-            manager.createNotificationChannel(channel);
+    /**
+     * 按屏幕状态和观察者选择 tick 间隔. 主线程调用, 在屏幕开关, 监听器注册/注销和广播开关变化时触发.
+     * 外部应用的计时广播视为可见的观察者.
+     */
+    private void updateTickMode() {
+        long mode;
+        if (!screenOn) {
+            mode = TICK_NONE;
+        } else if (!tickListeners.isEmpty() || !timersListeners.isEmpty() || broadcastEnabled) {
+            mode = TICK_VISIBLE_MS;
+        } else {
+            mode = TICK_NOTIFICATION_ONLY_MS;
+        }
+        if (mode == tickMode) {
+            return;
         }
+        tickMode = mode;
+        timingHandler.post(() -> {
+            engine.setTickIntervalMillis(mode);
+            screenOffCheckpoints = mode == TICK_NONE;
+            if (screenOffCheckpoints && engine.getState() != TimingEngine.STATE_STOPPED) {
+                // 之后改由低频闹钟写检查点, 先写一次
+                writeCheckpoint();
+            }
+            updateScreenOffCheckpoint();
+        });
     }
 
-    private void startForegroundService() {
-        Notification notification = createNotification();
-        startForeground(NOTIFICATION_ID, notification);
+    // 计时线程调用. 只在熄屏且计时中保留闹钟; 已在等待时不重新计时
+    private void updateScreenOffCheckpoint() {
+        if (screenOffCheckpoints && engine.isRunning()) {
+            if (!screenOffCheckpointPending) {
+                screenOffCheckpointPending = true;
+                checkpointAlarm.schedule(screenOffCheckpoint, SCREEN_OFF_CHECKPOINT_INTERVAL_MS);
+            }
+        } else if (screenOffCheckpointPending) {
+            screenOffCheckpointPending = false;
+            checkpointAlarm.cancel(screenOffCheckpoint);
+        }
     }
 
-    private Notification createNotification() {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0,
-                notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+    private void publishSnapshot() {
+        timersSnapshot = engine.getTimers().snapshot();
+    }
 
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("计时器正在运行")
-                .setContentText(formatTime(elapsedTime))
-                .setSmallIcon(R.mipmap.timer)
-                .setContentIntent(pendingIntent)
-                .build();
+    /**
+     * 进程被杀后 (包括 START_STICKY 重启) 恢复计时. 同一次开机内锚点仍然有效, 可精确恢复;
+     * 设备重启过则只能恢复到最后一个检查点, 并以暂停状态恢复.
+     */
+    private void restoreCheckpoint(File file) {
+        CheckpointJournal.Snapshot saved;
+        try {
+            saved = CheckpointJournal.read(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (saved == null || saved.state == TimingEngine.STATE_STOPPED) {
+            return;
+        }
+        sessionId = saved.sessionId;
+        long now = SystemClock.elapsedRealtime();
+        boolean sameBoot = saved.monotonicMillis <= now && (bootCount < 0 || saved.bootCount == bootCount);
+        if (sameBoot) {
+            engine.restore(saved.state, saved.accumulatedMillis, saved.anchorMillis);
+        } else {
+            long elapsedMillis = saved.elapsedAtCheckpoint();
+            engine.restore(TimingEngine.STATE_PAUSED, elapsedMillis, 0);
+            if (saved.state == TimingEngine.STATE_RUNNING) {
+                // 补一条暂停记录, 让日志中这一段驾驶在检查点处结束
+                logEvent(TripRecord.TYPE_PAUSE, elapsedMillis, saved.wallTime);
+            }
+        }
+        // 检查点只包含主计时, 其余预置计时器从零开始
+        if (engine.isRunning()) {
+            onDrivingResumed();
+        } else {
+            onDrivingPaused();
+        }
+        Log.i(TAG, "restored " + engine.getElapsedMillis() + "ms, state " + engine.getState()
+                + (sameBoot ? "" : " after reboot"));
     }
 
-    private void updateNotification() {
-        NotificationManager manager = getSystemService(NotificationManager.class);
-        manager.notify(NOTIFICATION_ID, createNotification());
+    private void writeCheckpoint() {
+        if (checkpointJournal == null) {
+            return;
+        }
+        lastCheckpointMillis = SystemClock.elapsedRealtime();
+        checkpoint.state = engine.getState();
+        checkpoint.sessionId = sessionId;
+        checkpoint.accumulatedMillis = engine.getAccumulatedMillis();
+        checkpoint.anchorMillis = engine.getAnchorMillis();
+        checkpoint.monotonicMillis = lastCheckpointMillis;
+        checkpoint.wallTime = System.currentTimeMillis();
+        checkpoint.bootCount = bootCount;
+        checkpointJournal.write(checkpoint);
     }
 
-    private String formatTime(long timeInMillis) {
-        int hours = (int) (timeInMillis / 3600000);
-        int minutes = (int) ((timeInMillis % 3600000) / 60000);
-        int seconds = (int) ((timeInMillis % 60000) / 1000);
-        return String.format("%02d:%02d:%02d", hours, minutes, seconds);
+    private void startForegroundService() {
+        perfStats.recordNotify();
+        Notification notification = notifier.build(engine.getElapsedMillis(), engine.isRunning());
+        startForeground(TimerNotifier.NOTIFICATION_ID, notification);
+    }
+
+    // 只在状态变化时调用, 计时中的走秒由系统完成
+    private void updateNotification() {
+        perfStats.recordNotify();
+        notifier.update(engine.getElapsedMillis(), engine.isRunning());
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null && intent.getAction() != null) {
-            switch (intent.getAction()) {
-                case ACTION_START:
-                    startTimer();
+        if (intent == null) {
+            // START_STICKY 重启, 检查点恢复后计时未结束时重新进入前台
+            timingHandler.post(() -> {
+                if (engine.getState() != TimingEngine.STATE_STOPPED) {
                     startForegroundService();
-                    break;
-                case ACTION_PAUSE:
-                    pauseTimer();
-                    break;
-                case ACTION_STOP:
-                    stopTimer();
-                    break;
-                case ACTION_RESUME:
-                    startTimer();
-                    break;
-                case ACTION_GET_STATUS:
-                    Intent statusIntent = new Intent(ACTION_TIME_UPDATE);
-                    statusIntent.putExtra(EXTRA_IS_RUNNING, isRunning);
-                    statusIntent.putExtra("time", elapsedTime);
-                    sendBroadcast(statusIntent);
-                    break;
+                }
+            });
+        } else if (intent.getAction() != null) {
+            String action = intent.getAction();
+            if (ACTION_START.equals(action)) {
+                BootPipeline.onServiceStarted();
             }
+            timingHandler.post(() -> handleAction(action));
         }
         return START_STICKY;
     }
 
-    private void startTimer() {
-        if (!isRunning) {
-            isRunning = true;
-            startTime = System.currentTimeMillis() - elapsedTime;
-            handler.post(timerRunnable);
+    // 计时线程
+    private void handleAction(String action) {
+        switch (action) {
+            case ACTION_START:
+                startTimer();
+                startForegroundService();
+                // 已在计时且熄屏不 tick 时不会再有界面更新, 在这里通知开机流程计时已就绪
+                if (engine.isRunning()) {
+                    handler.post(timerReady);
+                }
+                break;
+            case ACTION_PAUSE:
+                pauseTimer();
+                break;
+            case ACTION_STOP:
+                stopTimer();
+                break;
+            case ACTION_RESUME:
+                resumeTimer();
+                break;
+            case ACTION_END_SESSION:
+                stopTimer();
+                tripLogWriter.flush();
+                // 不再计时, 退出前台并结束服务, 界面仍绑定时服务保留到解绑
+                handler.post(() -> {
+                    stopForeground(STOP_FOREGROUND_REMOVE);
+                    stopSelf();
+                });
+                break;
+            case ACTION_LAP:
+                recordLap();
+                break;
+            case ACTION_SHUTDOWN:
+                writeCheckpoint();
+                tripLogWriter.flush();
+                break;
+            case ACTION_GET_STATUS:
+                Intent statusIntent = new Intent(ACTION_TIME_UPDATE);
+                statusIntent.putExtra(EXTRA_IS_RUNNING, engine.isRunning());
+                statusIntent.putExtra("time", engine.getElapsedMillis());
+                perfStats.recordBroadcast();
+                sendBroadcast(statusIntent);
+                break;
+        }
+    }
+
+    private boolean startTimer() {
+        boolean newSession = engine.getState() == TimingEngine.STATE_STOPPED;
+        if (!engine.start()) {
+            return false;
+        }
+        if (newSession) {
+            notifier.resetNotifyCount();
+            sessionId = System.currentTimeMillis();
+            sessionWakeupsStart = engine.getWakeupCount();
+            laps.clear();
+            publishLaps();
+            logEvent(TripRecord.TYPE_START, 0);
+            stopDrivingTimers();
+        } else {
+            logEvent(TripRecord.TYPE_RESUME, engine.getElapsedMillis());
         }
+        onDrivingResumed();
+        writeCheckpoint();
+        return true;
     }
 
-    private void pauseTimer() {
-        isRunning = false;
-        handler.removeCallbacks(timerRunnable);
+    private void resumeTimer() {
+        // 兼容旧行为: 未暂停时 "继续" 等同于开始
+        if (startTimer()) {
+            updateNotification();
+        }
     }
 
-    private void stopTimer() {
-        isRunning = false;
-        elapsedTime = 0;
-        handler.removeCallbacks(timerRunnable);
-        broadcastTime();
+    private boolean pauseTimer() {
+        if (!engine.pause()) {
+            return false;
+        }
+        logEvent(TripRecord.TYPE_PAUSE, engine.getElapsedMillis());
+        onDrivingPaused();
+        writeCheckpoint();
+        updateNotification();
+        return true;
     }
 
-    private void broadcastTime() {
+    private boolean stopTimer() {
+        long elapsedMillis = engine.getElapsedMillis();
+        if (engine.stop()) {
+            logEvent(TripRecord.TYPE_STOP, elapsedMillis);
+            stopDrivingTimers();
+            writeCheckpoint();
+            updateNotification();
+            // 逐秒 tick 时每秒唤醒一次
+            long wakeups = engine.getWakeupCount() - sessionWakeupsStart;
+            Log.i(TAG, "session " + elapsedMillis / 1000 + "s, tick wakeups " + wakeups
+                    + ", saved " + (elapsedMillis / 1000 - wakeups) + " vs per-second ticks");
+            // 逐秒刷新时每秒一次 notify
+            Log.i(TAG, "session " + elapsedMillis / 1000 + "s, notify calls " + notifier.getNotifyCount()
+                    + " (per-second mode: " + (elapsedMillis / 1000 + 1) + ")");
+            return true;
+        }
+        return false;
+    }
+
+    // 开车: 停车和停留计时暂停; 停留足够久算作休息, 连续驾驶重新计时
+    private void onDrivingResumed() {
+        long dwellMillis = engine.getElapsedMillis(TIMER_DWELL);
+        engine.pause(TIMER_PARKING);
+        engine.pause(TIMER_DWELL);
+        if (dwellMillis >= BREAK_MILLIS) {
+            engine.stop(TIMER_CONTINUOUS);
+        }
+        engine.start(TIMER_CONTINUOUS);
+    }
+
+    // 停车: 连续驾驶暂停, 停车累计继续, 停留从零开始
+    private void onDrivingPaused() {
+        engine.pause(TIMER_CONTINUOUS);
+        engine.start(TIMER_PARKING);
+        engine.stop(TIMER_DWELL);
+        engine.start(TIMER_DWELL);
+    }
+
+    private void stopDrivingTimers() {
+        engine.stop(TIMER_CONTINUOUS);
+        engine.stop(TIMER_PARKING);
+        engine.stop(TIMER_DWELL);
+    }
+
+    // 行程未停止时在当前计时处分段; 暂停中也可以分段, 例如停车送货时
+    private void recordLap() {
+        if (engine.getState() == TimingEngine.STATE_STOPPED) {
+            return;
+        }
+        long elapsedMillis = engine.getElapsedMillis();
+        laps.add(elapsedMillis);
+        logEvent(TripRecord.TYPE_LAP, elapsedMillis);
+        publishLaps();
+        requestUiUpdate();
+    }
+
+    // 只在分段和新会话时调用, 每次发布新的数组
+    private void publishLaps() {
+        long[] splits = new long[Math.min(RECENT_SPLITS, laps.size())];
+        for (int i = 0; i < splits.length; i++) {
+            splits[i] = laps.getSplit(laps.size() - 1 - i);
+        }
+        recentSplits = splits;
+        lastLapElapsedMillis = laps.getLast();
+        lapCount = laps.getTotalCount();
+    }
+
+    // 只编码进内存缓冲区, 由 TripLogWriter 在后台线程批量落盘
+    private void logEvent(int type, long elapsedMillis) {
+        logEvent(type, elapsedMillis, System.currentTimeMillis());
+    }
+
+    private void logEvent(int type, long elapsedMillis, long wallTime) {
+        tripLogWriter.append(tripRecord.set(type, sessionId, wallTime, elapsedMillis));
+    }
+
+    /**
+     * 注册后立即收到一次当前状态, 之后随计时变化回调. 只能在主线程调用.
+     */
+    public void addTickListener(TickListener listener) {
+        if (!tickListeners.contains(listener)) {
+            tickListeners.add(listener);
+            updateTickMode();
+        }
+        TimerBank.Snapshot snapshot = timersSnapshot;
+        listener.onTick(snapshot.getElapsedMillis(TIMER_TRIP, SystemClock.elapsedRealtime()),
+                snapshot.isRunning(TIMER_TRIP));
+    }
+
+    public void removeTickListener(TickListener listener) {
+        tickListeners.remove(listener);
+        updateTickMode();
+    }
+
+    // 以下读取方法可在任意线程调用, 读的是最近一次发布的快照
+
+    public int getTimerCount() {
+        return timersSnapshot.size();
+    }
+
+    public String getTimerName(int id) {
+        return timersSnapshot.getName(id);
+    }
+
+    public int getTimerState(int id) {
+        return timersSnapshot.getState(id);
+    }
+
+    public long getTimerElapsedMillis(int id) {
+        return timersSnapshot.getElapsedMillis(id, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 添加自定义计时器, 与预置计时器共用同一次 tick. 数量不限, 编号按添加顺序分配,
+     * 添加完成后 {@link TimersListener} 回调中的 {@link #getTimerCount()} 随之增加.
+     */
+    public void addTimer(String name) {
+        timingHandler.post(() -> {
+            engine.addTimer(name);
+            publishSnapshot();
+            requestUiUpdate();
+        });
+    }
+
+    /**
+     * 在当前行程计时处分段, 同 {@link #ACTION_LAP}.
+     */
+    public void lap() {
+        timingHandler.post(this::recordLap);
+    }
+
+    /**
+     * 本次行程的分段数, 任意线程可调用.
+     */
+    public long getLapCount() {
+        return lapCount;
+    }
+
+    /**
+     * 最近一次分段时的行程计时, 没有分段时为 0. 当前分段用时为总计时减去它.
+     */
+    public long getLastLapElapsedMillis() {
+        return lastLapElapsedMillis;
+    }
+
+    /**
+     * 最近几个已完成分段的用时, 最新的在前, 任意线程可调用. 更早的分段见行程记录.
+     */
+    public long[] getRecentSplits() {
+        return recentSplits.clone();
+    }
+
+    /**
+     * 开始或继续指定的计时器. 行程计时同 {@link #ACTION_START}, 会记录日志并进入前台.
+     */
+    public void startTimer(int id) {
+        timingHandler.post(() -> {
+            if (id != TIMER_TRIP) {
+                engine.start(id);
+            } else if (startTimer()) {
+                startForegroundService();
+            }
+        });
+    }
+
+    public void pauseTimer(int id) {
+        timingHandler.post(() -> {
+            if (id == TIMER_TRIP) {
+                pauseTimer();
+            } else {
+                engine.pause(id);
+            }
+        });
+    }
+
+    public void stopTimer(int id) {
+        timingHandler.post(() -> {
+            if (id == TIMER_TRIP) {
+                stopTimer();
+            } else {
+                engine.stop(id);
+            }
+        });
+    }
+
+    /**
+     * 注册后立即回调一次. 只能在主线程调用.
+     */
+    public void addTimersListener(TimersListener listener) {
+        if (!timersListeners.contains(listener)) {
+            timersListeners.add(listener);
+            updateTickMode();
+        }
+        listener.onTimersTick();
+    }
+
+    public void removeTimersListener(TimersListener listener) {
+        timersListeners.remove(listener);
+        updateTickMode();
+    }
+
+    /**
+     * 添加提醒规则: 计时器走到 firstMillis 时发出通知, repeatMillis 大于 0 时之后每隔 repeatMillis 再通知.
+     */
+    public void addAlertRule(int timerId, long firstMillis, long repeatMillis, String message) {
+        timingHandler.post(() -> alertScheduler.addRule(timerId, firstMillis, repeatMillis, message));
+    }
+
+    public DrivingRollups getRollups() {
+        return rollupIndex.getRollups();
+    }
+
+    /**
+     * 汇总数据更新后在主线程回调.
+     */
+    public void addRollupListener(Runnable listener) {
+        if (!rollupListeners.contains(listener)) {
+            rollupListeners.add(listener);
+        }
+    }
+
+    public void removeRollupListener(Runnable listener) {
+        rollupListeners.remove(listener);
+    }
+
+    // 计时线程
+    private void onEngineTick(long elapsedMillis, boolean running) {
+        requestUiUpdate();
+        if (broadcastEnabled) {
+            long second = elapsedMillis / 1000;
+            if (second != lastBroadcastSecond || running != lastBroadcastRunning) {
+                lastBroadcastSecond = second;
+                lastBroadcastRunning = running;
+                broadcastTime(elapsedMillis);
+            }
+        }
+    }
+
+    // 主线程还没处理上一次更新时不再投递, 主线程卡顿期间的多次 tick 合并为一次
+    private void requestUiUpdate() {
+        if (uiUpdatePending.compareAndSet(false, true)) {
+            uiRequestNanos = System.nanoTime();
+            handler.post(uiUpdate);
+        }
+    }
+
+    // 主线程: 从快照计算当前值, 回调监听器
+    private void deliverUiUpdate() {
+        deliveredTickNanos = uiRequestNanos;
+        uiUpdatePending.set(false);
+        perfStats.recordUiDelivery(System.nanoTime() - deliveredTickNanos);
+        TimerBank.Snapshot snapshot = timersSnapshot;
+        long elapsedMillis = snapshot.getElapsedMillis(TIMER_TRIP, SystemClock.elapsedRealtime());
+        boolean running = snapshot.isRunning(TIMER_TRIP);
+        // 倒序遍历, 允许回调中注销自身
+        for (int i = timersListeners.size() - 1; i >= 0; i--) {
+            timersListeners.get(i).onTimersTick();
+        }
+        // 合并: 显示的秒数和运行状态都没变时不通知
+        long second = elapsedMillis / 1000;
+        if (second == lastDispatchedSecond && running == lastDispatchedRunning) {
+            deliveredTickNanos = 0;
+            return;
+        }
+        lastDispatchedSecond = second;
+        lastDispatchedRunning = running;
+        for (int i = tickListeners.size() - 1; i >= 0; i--) {
+            tickListeners.get(i).onTick(elapsedMillis, running);
+        }
+        if (running) {
+            BootPipeline.onTimerReady(this);
+        }
+        deliveredTickNanos = 0;
+    }
+
+    private void broadcastTime(long elapsedMillis) {
         Intent intent = new Intent(ACTION_TIME_UPDATE);
-        intent.putExtra("time", elapsedTime);
+        intent.putExtra("time", elapsedMillis);
+        perfStats.recordBroadcast();
         sendBroadcast(intent);
     }
 
+    /**
+     * 运行时统计, 任意线程可读写.
+     */
+    public PerfStats getPerfStats() {
+        return perfStats;
+    }
+
+    /**
+     * 当前正在回调的界面更新对应的 tick 时刻 (System.nanoTime()), 供监听器统计到绘制的延迟.
+     * 只能在主线程调用; 不在 tick 回调中 (例如注册监听器时的首次回调) 返回 0.
+     */
+    public long getDeliveredTickNanos() {
+        return deliveredTickNanos;
+    }
+
+    /**
+     * adb shell dumpsys activity service com.yueqi.timer/.TimerService
+     * 参数 "reset" 清零统计.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        TimerBank.Snapshot snapshot = timersSnapshot;
+        long now = SystemClock.elapsedRealtime();
+        writer.println("TimerService");
+        for (int id = 0; id < snapshot.size(); id++) {
+            writer.println("  timer " + id + " " + snapshot.getName(id) + ": state " + snapshot.getState(id)
+                    + ", " + snapshot.getElapsedMillis(id, now) + "ms");
+        }
+        // 主线程字段, 这里只是近似值
+        writer.println("  tick mode " + tickMode + "ms, screen " + (screenOn ? "on" : "off")
+                + ", broadcast " + broadcastEnabled);
+        perfStats.dump(writer);
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            perfStats.reset();
+            writer.println("reset");
+        }
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        handler.removeCallbacks(timerRunnable);
+        tickListeners.clear();
+        timersListeners.clear();
+        rollupListeners.clear();
+        handler.removeCallbacks(uiUpdate);
+        rollupIndex.setChangeListener(null);
+        unregisterReceiver(timeChangedReceiver);
+        unregisterReceiver(screenReceiver);
+        if (powerReceiver != null) {
+            unregisterReceiver(powerReceiver);
+        }
+        settings.removeListener(settingsListener);
+        // 排在已投递的命令之后执行, 然后结束计时线程
+        timingHandler.post(() -> {
+            engine.release();
+            alertScheduler.release();
+            checkpointAlarm.cancel(screenOffCheckpoint);
+            tripHistory.setTicking(false);
+            // 日志写入线程属于进程, 只写出缓冲区
+            tripLogWriter.flush();
+            if (checkpointJournal != null) {
+                writeCheckpoint();
+                checkpointJournal.close();
+            }
+        });
+        timingThread.quitSafely();
     }
 
     @Override
     public void onTaskRemoved(Intent rootIntent) {
         super.onTaskRemoved(rootIntent);
-        if (isRunning) {
-            SharedPreferences prefs = getSharedPreferences("TimerPrefs", Context.MODE_PRIVATE);
-            prefs.edit().putLong("last_elapsed_time", elapsedTime).apply();
-        }
+        timingHandler.post(this::writeCheckpoint);
     }
 } 
\ No newline at end of file
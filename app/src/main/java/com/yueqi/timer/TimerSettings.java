@@ -0,0 +1,342 @@
+package com.yueqi.timer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内唯一的设置仓库. 第一次使用时从 "TimerPrefs" 读入一个不可变快照, 之后的读取都不访问磁盘.
+ * 修改通过 {@link #edit()} 提交: 立即发布新快照并在主线程通知监听器,
+ * 写盘由单个后台线程合并执行, 短时间内的多次修改只写一次.
+ */
+public final class TimerSettings {
+    private static final String PREFS_NAME = "TimerPrefs";
+    private static final String KEY_FIRST_RUN = "first_run";
+    private static final String KEY_AUTO_START_TIMER = "auto_start_timer";
+    private static final String KEY_AUTO_MINIMIZE = "auto_minimize";
+    private static final String KEY_BROADCAST_TIME = "broadcast_time_updates";
+    private static final String KEY_WINDOW_X = "window_x";
+    private static final String KEY_WINDOW_Y = "window_y";
+    private static final String KEY_RETENTION_DAYS = "retention_days";
+    private static final String KEY_RETENTION_MAX_MB = "retention_max_mb";
+    private static final String KEY_POWER_SESSION = "power_session";
+    private static final String KEY_POWER_CONNECT_DEBOUNCE = "power_connect_debounce_ms";
+    private static final String KEY_POWER_DISCONNECT_DEBOUNCE = "power_disconnect_debounce_ms";
+    private static final long WRITE_DELAY_MS = 200;
+
+    /**
+     * 设置变化后在主线程回调.
+     */
+    public interface Listener {
+        void onSettingsChanged(Snapshot settings);
+    }
+
+    public static final class Snapshot {
+        private final boolean firstRun;
+        private final boolean autoStartTimer;
+        private final boolean autoMinimize;
+        private final boolean broadcastTimeUpdates;
+        private final int windowX;
+        private final int windowY;
+        private final int retentionDays;
+        private final int retentionMaxMb;
+        private final boolean powerSession;
+        private final long powerConnectDebounceMillis;
+        private final long powerDisconnectDebounceMillis;
+
+        private Snapshot(boolean firstRun, boolean autoStartTimer, boolean autoMinimize,
+                         boolean broadcastTimeUpdates, int windowX, int windowY,
+                         int retentionDays, int retentionMaxMb, boolean powerSession,
+                         long powerConnectDebounceMillis, long powerDisconnectDebounceMillis) {
+            this.firstRun = firstRun;
+            this.autoStartTimer = autoStartTimer;
+            this.autoMinimize = autoMinimize;
+            this.broadcastTimeUpdates = broadcastTimeUpdates;
+            this.windowX = windowX;
+            this.windowY = windowY;
+            this.retentionDays = retentionDays;
+            this.retentionMaxMb = retentionMaxMb;
+            this.powerSession = powerSession;
+            this.powerConnectDebounceMillis = powerConnectDebounceMillis;
+            this.powerDisconnectDebounceMillis = powerDisconnectDebounceMillis;
+        }
+
+        public boolean isFirstRun() {
+            return firstRun;
+        }
+
+        /**
+         * 启动软件 (包括开机自启) 时自动开始计时.
+         */
+        public boolean isAutoStartTimer() {
+            return autoStartTimer;
+        }
+
+        /**
+         * 自动开始计时后最小化到悬浮窗.
+         */
+        public boolean isAutoMinimize() {
+            return autoMinimize;
+        }
+
+        /**
+         * 向其他应用发送 ACTION_TIME_UPDATE 广播.
+         */
+        public boolean isBroadcastTimeUpdates() {
+            return broadcastTimeUpdates;
+        }
+
+        public int getWindowX() {
+            return windowX;
+        }
+
+        public int getWindowY() {
+            return windowY;
+        }
+
+        /**
+         * 行程记录保留的天数, 0 表示不按时间清理.
+         */
+        public int getRetentionDays() {
+            return retentionDays;
+        }
+
+        /**
+         * 行程记录占用空间上限, MB, 0 表示不按大小清理.
+         */
+        public int getRetentionMaxMb() {
+            return retentionMaxMb;
+        }
+
+        /**
+         * 电源接通时开始行程, 断开时结束行程, 见 {@link SessionStateMachine}.
+         */
+        public boolean isPowerSession() {
+            return powerSession;
+        }
+
+        /**
+         * 电源接通持续这么久才开始行程.
+         */
+        public long getPowerConnectDebounceMillis() {
+            return powerConnectDebounceMillis;
+        }
+
+        /**
+         * 电源断开持续这么久才结束行程, 期间重新接通算同一次行程.
+         */
+        public long getPowerDisconnectDebounceMillis() {
+            return powerDisconnectDebounceMillis;
+        }
+    }
+
+    /**
+     * 只记录被修改的项, 提交时合并到最新快照上, 并发提交不会互相覆盖.
+     */
+    public final class Editor {
+        private static final int FIRST_RUN = 1;
+        private static final int AUTO_START_TIMER = 1 << 1;
+        private static final int AUTO_MINIMIZE = 1 << 2;
+        private static final int BROADCAST_TIME = 1 << 3;
+        private static final int WINDOW_POSITION = 1 << 4;
+        private static final int RETENTION = 1 << 5;
+        private static final int POWER_SESSION = 1 << 6;
+        private static final int POWER_DEBOUNCE = 1 << 7;
+
+        private int changed;
+        private boolean firstRun;
+        private boolean autoStartTimer;
+        private boolean autoMinimize;
+        private boolean broadcastTimeUpdates;
+        private int windowX;
+        private int windowY;
+        private int retentionDays;
+        private int retentionMaxMb;
+        private boolean powerSession;
+        private long powerConnectDebounceMillis;
+        private long powerDisconnectDebounceMillis;
+
+        private Editor() {
+        }
+
+        public Editor setFirstRun(boolean value) {
+            firstRun = value;
+            changed |= FIRST_RUN;
+            return this;
+        }
+
+        public Editor setAutoStartTimer(boolean value) {
+            autoStartTimer = value;
+            changed |= AUTO_START_TIMER;
+            return this;
+        }
+
+        public Editor setAutoMinimize(boolean value) {
+            autoMinimize = value;
+            changed |= AUTO_MINIMIZE;
+            return this;
+        }
+
+        public Editor setBroadcastTimeUpdates(boolean value) {
+            broadcastTimeUpdates = value;
+            changed |= BROADCAST_TIME;
+            return this;
+        }
+
+        public Editor setWindowPosition(int x, int y) {
+            windowX = x;
+            windowY = y;
+            changed |= WINDOW_POSITION;
+            return this;
+        }
+
+        public Editor setRetention(int days, int maxMb) {
+            retentionDays = days;
+            retentionMaxMb = maxMb;
+            changed |= RETENTION;
+            return this;
+        }
+
+        public Editor setPowerSession(boolean value) {
+            powerSession = value;
+            changed |= POWER_SESSION;
+            return this;
+        }
+
+        public Editor setPowerDebounce(long connectMillis, long disconnectMillis) {
+            powerConnectDebounceMillis = connectMillis;
+            powerDisconnectDebounceMillis = disconnectMillis;
+            changed |= POWER_DEBOUNCE;
+            return this;
+        }
+
+        public void apply() {
+            if (changed != 0) {
+                commit(this);
+            }
+        }
+
+        private Snapshot mergeInto(Snapshot s) {
+            return new Snapshot(
+                    (changed & FIRST_RUN) != 0 ? firstRun : s.firstRun,
+                    (changed & AUTO_START_TIMER) != 0 ? autoStartTimer : s.autoStartTimer,
+                    (changed & AUTO_MINIMIZE) != 0 ? autoMinimize : s.autoMinimize,
+                    (changed & BROADCAST_TIME) != 0 ? broadcastTimeUpdates : s.broadcastTimeUpdates,
+                    (changed & WINDOW_POSITION) != 0 ? windowX : s.windowX,
+                    (changed & WINDOW_POSITION) != 0 ? windowY : s.windowY,
+                    (changed & RETENTION) != 0 ? retentionDays : s.retentionDays,
+                    (changed & RETENTION) != 0 ? retentionMaxMb : s.retentionMaxMb,
+                    (changed & POWER_SESSION) != 0 ? powerSession : s.powerSession,
+                    (changed & POWER_DEBOUNCE) != 0 ? powerConnectDebounceMillis : s.powerConnectDebounceMillis,
+                    (changed & POWER_DEBOUNCE) != 0 ? powerDisconnectDebounceMillis : s.powerDisconnectDebounceMillis);
+        }
+    }
+
+    private static volatile TimerSettings instance;
+
+    private final SharedPreferences prefs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService writer =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "TimerSettings"));
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private volatile Snapshot current;
+    private boolean writeScheduled;
+    private final Runnable writeTask = this::writeCurrent;
+
+    private TimerSettings(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        current = new Snapshot(
+                prefs.getBoolean(KEY_FIRST_RUN, true),
+                prefs.getBoolean(KEY_AUTO_START_TIMER, false),
+                prefs.getBoolean(KEY_AUTO_MINIMIZE, false),
+                prefs.getBoolean(KEY_BROADCAST_TIME, false),
+                prefs.getInt(KEY_WINDOW_X, 0),
+                prefs.getInt(KEY_WINDOW_Y, 100),
+                prefs.getInt(KEY_RETENTION_DAYS, 0),
+                prefs.getInt(KEY_RETENTION_MAX_MB, 0),
+                prefs.getBoolean(KEY_POWER_SESSION, false),
+                // 打火时掉电通常不到一秒; 熄火一分钟内重新点火算同一次行程
+                prefs.getLong(KEY_POWER_CONNECT_DEBOUNCE, 3_000),
+                prefs.getLong(KEY_POWER_DISCONNECT_DEBOUNCE, 60_000));
+    }
+
+    public static TimerSettings get(Context context) {
+        TimerSettings settings = instance;
+        if (settings == null) {
+            synchronized (TimerSettings.class) {
+                settings = instance;
+                if (settings == null) {
+                    settings = new TimerSettings(context.getApplicationContext());
+                    instance = settings;
+                }
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * 当前设置, 任意线程可调用, 不访问磁盘.
+     */
+    public Snapshot current() {
+        return current;
+    }
+
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void commit(Editor editor) {
+        Snapshot updated;
+        synchronized (lock) {
+            updated = editor.mergeInto(current);
+            current = updated;
+            if (!writeScheduled) {
+                writeScheduled = true;
+                writer.schedule(writeTask, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        Snapshot published = updated;
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onSettingsChanged(published);
+            }
+        });
+    }
+
+    // 后台线程: 写入最新快照, 期间的修改在下一次写入
+    private void writeCurrent() {
+        Snapshot s;
+        synchronized (lock) {
+            s = current;
+            writeScheduled = false;
+        }
+        prefs.edit()
+                .putBoolean(KEY_FIRST_RUN, s.firstRun)
+                .putBoolean(KEY_AUTO_START_TIMER, s.autoStartTimer)
+                .putBoolean(KEY_AUTO_MINIMIZE, s.autoMinimize)
+                .putBoolean(KEY_BROADCAST_TIME, s.broadcastTimeUpdates)
+                .putInt(KEY_WINDOW_X, s.windowX)
+                .putInt(KEY_WINDOW_Y, s.windowY)
+                .putInt(KEY_RETENTION_DAYS, s.retentionDays)
+                .putInt(KEY_RETENTION_MAX_MB, s.retentionMaxMb)
+                .putBoolean(KEY_POWER_SESSION, s.powerSession)
+                .putLong(KEY_POWER_CONNECT_DEBOUNCE, s.powerConnectDebounceMillis)
+                .putLong(KEY_POWER_DISCONNECT_DEBOUNCE, s.powerDisconnectDebounceMillis)
+                .commit();
+    }
+}
@@ -0,0 +1,102 @@
+package com.yueqi.timer;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.widget.RemoteViews;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 桌面小部件. 计时由 RemoteViews 中的 Chronometer 按开机后的时钟基准自己走秒,
+ * 计时服务只在开始/暂停/继续/停止时推送一次, 计时中每秒没有跨进程开销.
+ * 计时服务未运行时 (例如刚添加小部件) 从检查点读取状态.
+ */
+public class TimerWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager manager, int[] appWidgetIds) {
+        CheckpointJournal.Snapshot saved = null;
+        try {
+            // 两个 64 字节的槽位, 在广播线程上读取
+            saved = CheckpointJournal.read(new File(context.getFilesDir(), TimerService.CHECKPOINT_FILE));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        int state = TimingEngine.STATE_STOPPED;
+        long elapsedMillis = 0;
+        long accumulatedMillis = 0;
+        long anchorMillis = 0;
+        if (saved != null && saved.state != TimingEngine.STATE_STOPPED) {
+            int bootCount = Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+            long now = SystemClock.elapsedRealtime();
+            boolean sameBoot = saved.monotonicMillis <= now && (bootCount < 0 || saved.bootCount == bootCount);
+            // 与 TimerService 恢复检查点的规则一致: 重启过则按暂停显示到检查点为止
+            if (sameBoot) {
+                state = saved.state;
+                accumulatedMillis = saved.accumulatedMillis;
+                anchorMillis = saved.anchorMillis;
+                elapsedMillis = state == TimingEngine.STATE_RUNNING
+                        ? accumulatedMillis + now - anchorMillis : accumulatedMillis;
+            } else {
+                state = TimingEngine.STATE_PAUSED;
+                elapsedMillis = saved.elapsedAtCheckpoint();
+            }
+        }
+        manager.updateAppWidget(appWidgetIds, buildViews(context, state, accumulatedMillis, anchorMillis, elapsedMillis));
+    }
+
+    /**
+     * 由计时服务在行程计时状态变化时调用, 没有小部件时不做任何事. 可在任意线程调用.
+     *
+     * @param accumulatedMillis 同 {@link TimingEngine#getAccumulatedMillis()}
+     * @param anchorMillis      同 {@link TimingEngine#getAnchorMillis()}, 只在计时中有意义
+     */
+    public static void update(Context context, int state, long accumulatedMillis, long anchorMillis,
+                              long elapsedMillis) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        if (manager == null) {
+            return;
+        }
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, TimerWidgetProvider.class));
+        if (ids.length == 0) {
+            return;
+        }
+        manager.updateAppWidget(ids, buildViews(context, state, accumulatedMillis, anchorMillis, elapsedMillis));
+    }
+
+    private static RemoteViews buildViews(Context context, int state, long accumulatedMillis, long anchorMillis,
+                                          long elapsedMillis) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_timer);
+        boolean running = state == TimingEngine.STATE_RUNNING;
+        // Chronometer 显示 elapsedRealtime - base; 计时中 base 固定, 不随推送时间变化
+        long base = running
+                ? anchorMillis - accumulatedMillis
+                : SystemClock.elapsedRealtime() - elapsedMillis;
+        views.setChronometer(R.id.widgetChronometer, base, null, running);
+        views.setTextViewText(R.id.widgetStateTextView, stateName(state));
+
+        Intent intent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
+                intent, PendingIntent.FLAG_IMMUTABLE);
+        views.setOnClickPendingIntent(R.id.widgetRoot, pendingIntent);
+        return views;
+    }
+
+    private static String stateName(int state) {
+        switch (state) {
+            case TimingEngine.STATE_RUNNING:
+                return "行程计时中";
+            case TimingEngine.STATE_PAUSED:
+                return "已暂停";
+            default:
+                return "未开始";
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.yueqi.timer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 在后台线程把行程日志导出到用户通过 SAF 选择的文档, 由 {@link TripExporter} 流式编码.
+ * 回调在主线程进行. 取消或失败时删除写了一半的文档.
+ * 进行中的导出属于进程而不是界面, 界面重建后通过 {@link #current()} 找回并 {@link #attach} 重新接收回调.
+ */
+public class TripExportTask implements Runnable {
+    public interface Callback {
+        void onExportProgress(long scanned, long total);
+
+        void onExportFinished(long exported);
+
+        void onExportCancelled();
+
+        void onExportFailed(Exception e);
+    }
+
+    // 同一时间只导出一个文档, 排队执行
+    private static final ExecutorService EXECUTOR =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "TripExport"));
+
+    private final ContentResolver resolver;
+    private final TripLogWriter writer;
+    private final Uri uri;
+    private final TripExporter exporter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile Callback callback;
+    // 只在主线程访问
+    private static TripExportTask current;
+    private long lastScanned;
+    private long lastTotal;
+
+    private TripExportTask(Context context, Uri uri, TripExporter exporter, Callback callback) {
+        this.resolver = context.getContentResolver();
+        this.writer = TripHistory.get(context).getWriter();
+        this.uri = uri;
+        this.exporter = exporter;
+        this.callback = callback;
+    }
+
+    /**
+     * 导出墙上时间在 [fromWallTime, toWallTime) 内的记录.
+     *
+     * @param format {@link TripExporter#FORMAT_CSV} 或 {@link TripExporter#FORMAT_JSON}
+     */
+    public static TripExportTask start(Context context, Uri uri, int format, long fromWallTime, long toWallTime,
+                                       Callback callback) {
+        TripExporter exporter = new TripExporter(format, TimeZone.getDefault());
+        exporter.setRange(fromWallTime, toWallTime);
+        TripExportTask task = new TripExportTask(context, uri, exporter, callback);
+        exporter.setProgressListener((scanned, total) -> task.handler.post(() -> {
+            task.lastScanned = scanned;
+            task.lastTotal = total;
+            Callback c = task.callback;
+            if (c != null) {
+                c.onExportProgress(scanned, total);
+            }
+        }));
+        current = task;
+        EXECUTOR.execute(task);
+        return task;
+    }
+
+    /**
+     * 尚未结束的导出, 没有时为 null. 只在主线程调用.
+     */
+    public static TripExportTask current() {
+        return current;
+    }
+
+    public void cancel() {
+        exporter.cancel();
+    }
+
+    /**
+     * 不再回调, 导出继续进行. 用于界面销毁时.
+     */
+    public void detach() {
+        callback = null;
+    }
+
+    /**
+     * 重新接收回调, 先补发最近一次进度. 只在主线程调用.
+     */
+    public void attach(Callback callback) {
+        this.callback = callback;
+        if (lastTotal > 0) {
+            callback.onExportProgress(lastScanned, lastTotal);
+        }
+    }
+
+    @Override
+    public void run() {
+        try (OutputStream out = resolver.openOutputStream(uri, "wt")) {
+            if (out == null) {
+                throw new FileNotFoundException(uri.toString());
+            }
+            // 与写入线程共用已打开的日志, 扫描期间清理和合并会等待
+            SegmentedTripLog log = writer.awaitLog();
+            if (log == null) {
+                throw new FileNotFoundException(TripHistory.TRIP_DIR);
+            }
+            long exported = exporter.export(log, out);
+            finish(() -> callback.onExportFinished(exported));
+        } catch (CancellationException e) {
+            deleteDocument();
+            finish(() -> callback.onExportCancelled());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deleteDocument();
+            finish(() -> callback.onExportCancelled());
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            deleteDocument();
+            finish(() -> callback.onExportFailed(e));
+        }
+    }
+
+    private void finish(Runnable action) {
+        handler.post(() -> {
+            if (current == this) {
+                current = null;
+            }
+            if (callback != null) {
+                action.run();
+            }
+        });
+    }
+
+    private void deleteDocument() {
+        try {
+            DocumentsContract.deleteDocument(resolver, uri);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
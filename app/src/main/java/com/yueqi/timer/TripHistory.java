@@ -0,0 +1,104 @@
+package com.yueqi.timer;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TimeZone;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 进程内唯一的行程历史: 分段日志的写入线程和汇总索引. 计时服务重建时沿用同一个实例,
+ * 导出和后台维护也经由这里访问日志.
+ */
+public final class TripHistory {
+    private static final String TAG = "TripHistory";
+    public static final String TRIP_DIR = "trips";
+    // 分段之前的单文件日志
+    private static final String LEGACY_TRIP_LOG_FILE = "trips.log";
+    private static final String ROLLUP_FILE = "rollups.bin";
+    private static final long BATCH_DELAY_MS = 200;
+    private static final long DAY_MS = 24 * 3600_000L;
+
+    private static volatile TripHistory instance;
+
+    private final TripLogWriter writer;
+    private final RollupIndex rollupIndex;
+    private volatile boolean ticking;
+
+    private TripHistory(Context context) {
+        File filesDir = context.getFilesDir();
+        File dir = new File(filesDir, TRIP_DIR);
+        try {
+            // 只是改名, 在日志线程打开目录之前完成
+            if (SegmentedTripLog.migrate(new File(filesDir, LEGACY_TRIP_LOG_FILE), dir)) {
+                Log.i(TAG, "migrated legacy trip log");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        rollupIndex = new RollupIndex(new File(filesDir, ROLLUP_FILE), TimeZone.getDefault());
+        // 汇总在日志写入线程上随每个会话结束增量更新
+        writer = new TripLogWriter(dir, BATCH_DELAY_MS, rollupIndex);
+    }
+
+    public static TripHistory get(Context context) {
+        TripHistory history = instance;
+        if (history == null) {
+            synchronized (TripHistory.class) {
+                history = instance;
+                if (history == null) {
+                    history = new TripHistory(context.getApplicationContext());
+                    instance = history;
+                }
+            }
+        }
+        return history;
+    }
+
+    public TripLogWriter getWriter() {
+        return writer;
+    }
+
+    public RollupIndex getRollupIndex() {
+        return rollupIndex;
+    }
+
+    /**
+     * 计时服务在计时开始和结束时设置, 计时期间不做合并.
+     */
+    public void setTicking(boolean ticking) {
+        this.ticking = ticking;
+    }
+
+    public boolean isTicking() {
+        return ticking;
+    }
+
+    /**
+     * 在日志写入线程上按设置清理过期记录, 然后合并小段. 计时开始或 shouldStop 返回 true 时尽快结束,
+     * 已合并的段保持有效. 结束后在写入线程上执行 onDone.
+     */
+    public Future<?> maintain(TimerSettings.Snapshot settings, BooleanSupplier shouldStop, Runnable onDone) {
+        long minWallTime = settings.getRetentionDays() > 0
+                ? System.currentTimeMillis() - settings.getRetentionDays() * DAY_MS
+                : Long.MIN_VALUE;
+        long maxBytes = settings.getRetentionMaxMb() * 1024L * 1024L;
+        BooleanSupplier stop = () -> ticking || shouldStop.getAsBoolean();
+        return writer.maintain(log -> {
+            try {
+                if (log == null || stop.getAsBoolean()) {
+                    return;
+                }
+                int dropped = log.applyRetention(minWallTime, maxBytes);
+                int merged = log.compact(stop);
+                Log.i(TAG, "maintenance: dropped " + dropped + ", merged " + merged
+                        + ", segments " + log.getSegmentCount() + ", bytes " + log.getTotalBytes());
+            } finally {
+                onDone.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,152 @@
+package com.yueqi.timer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 行程记录列表, 最新的在前. 记录由 {@link TripHistoryPager} 在后台线程按页读取,
+ * 所在页尚未读出的行先显示为空, 读出后刷新该页. 打开日志和解码都不在主线程进行,
+ * 内存占用与记录数无关. 回调在主线程进行.
+ */
+public class TripHistoryAdapter extends RecyclerView.Adapter<TripHistoryAdapter.RecordViewHolder> {
+    public interface Callback {
+        /**
+         * @param count 记录数, 日志打开失败时为 0
+         */
+        void onOpened(int count);
+    }
+
+    // 打开日志和解码页共用, 按顺序执行
+    private static final ExecutorService EXECUTOR =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "TripHistory"));
+
+    static final class RecordViewHolder extends RecyclerView.ViewHolder {
+        final TextView timeText;
+        final TextView typeText;
+        final TextView elapsedText;
+
+        RecordViewHolder(View itemView) {
+            super(itemView);
+            timeText = itemView.findViewById(R.id.recordTimeTextView);
+            typeText = itemView.findViewById(R.id.recordTypeTextView);
+            elapsedText = itemView.findViewById(R.id.recordElapsedTextView);
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final TripRecord record = new TripRecord();
+    private final ElapsedTimeFormatter formatter = new ElapsedTimeFormatter();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private final Date date = new Date();
+    private TripHistoryPager pager;
+    private boolean closed;
+
+    /**
+     * 在后台线程等待日志打开并读取编号范围, 完成后在主线程显示并回调.
+     */
+    public void open(TripLogWriter writer, Callback callback) {
+        EXECUTOR.execute(() -> {
+            TripHistoryPager opened = null;
+            try {
+                SegmentedTripLog log = writer.awaitLog();
+                if (log != null) {
+                    opened = new TripHistoryPager(log, TripHistoryPager.DEFAULT_PAGE_SIZE,
+                            TripHistoryPager.DEFAULT_CACHED_PAGES, EXECUTOR);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            TripHistoryPager result = opened;
+            handler.post(() -> {
+                if (closed) {
+                    if (result != null) {
+                        result.close();
+                    }
+                    return;
+                }
+                if (result != null) {
+                    result.setListener((fromPosition, count) -> handler.post(() -> {
+                        if (pager == result) {
+                            notifyItemRangeChanged(fromPosition, count);
+                        }
+                    }));
+                    pager = result;
+                    notifyDataSetChanged();
+                }
+                callback.onOpened(result != null ? result.getCount() : 0);
+            });
+        });
+    }
+
+    /**
+     * 列表关闭时调用, 丢弃缓存的页, 排队中的加载跳过.
+     */
+    public void close() {
+        closed = true;
+        if (pager != null) {
+            pager.close();
+            pager = null;
+        }
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    public RecordViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_trip_record, parent, false);
+        return new RecordViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(RecordViewHolder holder, int position) {
+        int result = pager.get(position, record);
+        if (result == TripHistoryPager.AVAILABLE) {
+            date.setTime(record.wallTime);
+            holder.timeText.setText(dateFormat.format(date));
+            holder.typeText.setText(typeName(record.type));
+            int length = formatter.format(record.elapsedMillis);
+            holder.elapsedText.setText(formatter.getBuffer(), 0, length);
+        } else {
+            // 读出后整页刷新
+            holder.timeText.setText(result == TripHistoryPager.MISSING ? "记录已损坏" : "");
+            holder.typeText.setText("");
+            holder.elapsedText.setText("");
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return pager != null ? pager.getCount() : 0;
+    }
+
+    private static String typeName(int type) {
+        switch (type) {
+            case TripRecord.TYPE_START:
+                return "开始";
+            case TripRecord.TYPE_PAUSE:
+                return "暂停";
+            case TripRecord.TYPE_RESUME:
+                return "继续";
+            case TripRecord.TYPE_STOP:
+                return "结束";
+            case TripRecord.TYPE_LAP:
+                return "分段";
+            default:
+                return "";
+        }
+    }
+}
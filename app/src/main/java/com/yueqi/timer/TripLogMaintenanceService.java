@@ -0,0 +1,64 @@
+package com.yueqi.timer;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+
+/**
+ * 行程日志的清理和合并. 每天最多各运行一次, 一个要求充电, 一个要求设备空闲;
+ * 计时中不运行, 运行中开始计时会在当前这组段合并完后停止.
+ */
+public class TripLogMaintenanceService extends JobService {
+    private static final int JOB_ID_CHARGING = 1001;
+    private static final int JOB_ID_IDLE = 1002;
+    private static final long INTERVAL_MS = 24 * 3600_000L;
+
+    private volatile boolean stopped;
+
+    /**
+     * 没有安排过时才安排, 不会推迟已安排的任务.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null) {
+            return;
+        }
+        ComponentName component = new ComponentName(context, TripLogMaintenanceService.class);
+        if (scheduler.getPendingJob(JOB_ID_CHARGING) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, component)
+                    .setRequiresCharging(true)
+                    .setPeriodic(INTERVAL_MS)
+                    .setPersisted(true)
+                    .build());
+        }
+        if (scheduler.getPendingJob(JOB_ID_IDLE) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, component)
+                    .setRequiresDeviceIdle(true)
+                    .setPeriodic(INTERVAL_MS)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        TripHistory history = TripHistory.get(this);
+        if (history.isTicking()) {
+            return false;
+        }
+        stopped = false;
+        history.maintain(TimerSettings.get(this).current(), () -> stopped,
+                () -> jobFinished(params, false));
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        // 下个周期再做, 不需要重试
+        return false;
+    }
+}
@@ -0,0 +1,44 @@
+package com.yueqi.timer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ElapsedTimeFormatter 与 String.format 的单次格式化耗时.
+ * 分配量用 -prof gc 查看 (-PjmhIncludes=FormatterBenchmark -PjmhProfilers=gc),
+ * gc.alloc.rate.norm 前者应为 0.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatterBenchmark {
+    private final ElapsedTimeFormatter formatter = new ElapsedTimeFormatter();
+    private long millis;
+
+    @Benchmark
+    public int elapsedTimeFormatter() {
+        millis += 1000;
+        return formatter.format(millis);
+    }
+
+    @Benchmark
+    public int elapsedTimeFormatterTenths() {
+        millis += 100;
+        return formatter.format(millis, true);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        millis += 1000;
+        int hours = (int) (millis / 3600000);
+        int minutes = (int) ((millis % 3600000) / 60000);
+        int seconds = (int) ((millis % 60000) / 1000);
+        return String.format("%02d:%02d:%02d", hours, minutes, seconds);
+    }
+}
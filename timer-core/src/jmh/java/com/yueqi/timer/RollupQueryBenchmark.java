@@ -0,0 +1,70 @@
+package com.yueqi.timer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 汇总查询的耗时, 数据为三年每天两段驾驶. 查询范围与界面统计一致: 今天, 本周, 本月, 近 30 天最长一段.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RollupQueryBenchmark {
+    private static final int DAYS = 3 * 365;
+    private static final long HOUR = 3600_000L;
+
+    private DrivingRollups rollups;
+    private int today;
+    private long addWallTime;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rollups = new DrivingRollups(TimeZone.getTimeZone("Asia/Shanghai"));
+        long start = 1_600_000_000_000L;
+        for (int d = 0; d < DAYS; d++) {
+            long day = start + d * 24 * HOUR;
+            rollups.addInterval(day + 8 * HOUR, HOUR + d % 60 * 60_000L);
+            rollups.addInterval(day + 18 * HOUR, 2 * HOUR);
+        }
+        today = rollups.dayKey(start + (DAYS - 1) * 24 * HOUR);
+        addWallTime = start + DAYS * 24 * HOUR;
+    }
+
+    @Benchmark
+    public long today() {
+        return rollups.totalForDays(today, today);
+    }
+
+    @Benchmark
+    public long thisWeek() {
+        int week = DrivingRollups.weekKey(today);
+        return rollups.totalForWeeks(week, week);
+    }
+
+    @Benchmark
+    public long thisMonth() {
+        int month = DrivingRollups.monthKey(today);
+        return rollups.totalForMonths(month, month);
+    }
+
+    @Benchmark
+    public long longestInLast30Days() {
+        return rollups.longestStretch(today - 29, today);
+    }
+
+    // 跨零点的区间会拆成两段
+    @Benchmark
+    public void addIntervalAcrossMidnight() {
+        addWallTime += 24 * HOUR;
+        rollups.addInterval(addWallTime - HOUR, 2 * HOUR);
+    }
+}
@@ -0,0 +1,58 @@
+package com.yueqi.timer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次调度 tick 的耗时: 计算各计时器的时间, 回调监听器并安排下一次 tick.
+ * 调度器只记录任务, 基准直接执行它, 不包含线程切换.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TickBenchmark {
+    @Param({"1", "4", "20"})
+    public int runningTimers;
+
+    private long now;
+    private Runnable pendingTick;
+    private TimingEngine engine;
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        now = 1_000;
+        engine = new TimingEngine(() -> now, new TickScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                pendingTick = task;
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+            }
+        });
+        engine.setListener((elapsedMillis, running) -> this.blackhole.consume(elapsedMillis));
+        engine.start();
+        for (int i = 1; i < runningTimers; i++) {
+            engine.start(engine.addTimer("timer " + i));
+        }
+    }
+
+    @Benchmark
+    public void tick() {
+        now += 1000;
+        pendingTick.run();
+    }
+}
@@ -0,0 +1,109 @@
+package com.yueqi.timer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟主线程负载 (周期性的长任务, 类似开机时 inflate 界面), 对比 tick 调度在主线程上
+ * 和在独立计时线程上的抖动. 每个样本为相邻两次 tick 的间隔, 理想值为 100ms,
+ * p99 和 max 超出 100ms 的部分即 tick 延迟. 依赖真实时间和机器负载, 只作测量, 不做断言.
+ * ./gradlew :timer-core:jmh -PjmhIncludes=TickJitterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TickJitterBenchmark {
+    private static final long TICK_INTERVAL_MS = 100;
+    // 每 250ms 主线程被占用 80ms
+    private static final long STALL_PERIOD_MS = 250;
+    private static final long STALL_MS = 80;
+
+    private static final class ExecutorTickScheduler implements TickScheduler {
+        private final ScheduledExecutorService executor;
+        private final Map<Runnable, Future<?>> pending = new HashMap<>();
+
+        ExecutorTickScheduler(ScheduledExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void schedule(Runnable task, long delayMillis) {
+            pending.put(task, executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public synchronized void cancel(Runnable task) {
+            Future<?> future = pending.remove(task);
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    @Param({"false", "true"})
+    public boolean dedicatedThread;
+
+    private ScheduledExecutorService mainThread;
+    private ScheduledExecutorService timingThread;
+    private TimingEngine engine;
+    private final Semaphore ticks = new Semaphore(0);
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private static void busy(long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mainThread = Executors.newSingleThreadScheduledExecutor();
+        timingThread = dedicatedThread ? Executors.newSingleThreadScheduledExecutor() : mainThread;
+        mainThread.scheduleAtFixedRate(() -> busy(STALL_MS), 0, STALL_PERIOD_MS, TimeUnit.MILLISECONDS);
+        engine = new TimingEngine(TickJitterBenchmark::now, new ExecutorTickScheduler(timingThread), TICK_INTERVAL_MS);
+        engine.setListener((elapsedMillis, running) -> {
+            if (running) {
+                ticks.release();
+            }
+        });
+        timingThread.submit(() -> { engine.start(); }).get();
+    }
+
+    // 迭代之间积累的 tick 不计入
+    @Setup(Level.Iteration)
+    public void drain() {
+        ticks.drainPermits();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        timingThread.submit(() -> { engine.stop(); }).get();
+        mainThread.shutdownNow();
+        timingThread.shutdownNow();
+    }
+
+    @Benchmark
+    public void nextTick() throws InterruptedException {
+        ticks.acquire();
+    }
+}
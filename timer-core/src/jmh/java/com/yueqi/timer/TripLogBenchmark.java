@@ -0,0 +1,86 @@
+package com.yueqi.timer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 行程日志的追加和顺序扫描吞吐. 扫描使用预先写入的十万条记录 (约 3MB),
+ * 文件在页缓存中, 结果反映解码和校验的开销而不是磁盘速度.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TripLogBenchmark {
+    private static final int SCAN_RECORDS = 100_000;
+
+    private File dir;
+    private TripLog appendLog;
+    private TripLog scanLog;
+    private final TripRecord record = new TripRecord();
+    private long wallTime;
+    private long visited;
+    private final TripLog.Visitor visitor = (index, r) -> {
+        visited += r.elapsedMillis;
+        return true;
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("triplog-bench").toFile();
+        wallTime = 1_700_000_000_000L;
+        File scanFile = new File(dir, "scan.log");
+        scanLog = TripLog.open(scanFile);
+        for (int i = 0; i < SCAN_RECORDS; i++) {
+            scanLog.append(record.set(TripRecord.TYPE_START + i % 4, i / 4, wallTime + i * 1000L, i * 1000L));
+        }
+    }
+
+    // 每轮迭代重新建文件, 避免追加文件无限增长
+    @Setup(Level.Iteration)
+    public void openAppendLog() throws IOException {
+        File file = new File(dir, "append.log");
+        file.delete();
+        appendLog = TripLog.open(file);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeAppendLog() throws IOException {
+        appendLog.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        scanLog.close();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        wallTime += 1000;
+        appendLog.append(record.set(TripRecord.TYPE_PAUSE, 1, wallTime, 1000));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCAN_RECORDS)
+    public long scan() throws IOException {
+        visited = 0;
+        scanLog.scan(0, visitor);
+        return visited;
+    }
+}
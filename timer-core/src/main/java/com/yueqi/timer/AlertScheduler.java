@@ -0,0 +1,184 @@
+package com.yueqi.timer;
+
+/**
+ * 按计时器走过的时间触发的提醒, 例如连续驾驶 2 小时. 每条规则对应一个计时器,
+ * 在该计时器走到 firstMillis 时触发, repeatMillis 大于 0 时之后每隔 repeatMillis 再触发.
+ * 计时器在走时把下一个阈值换算成单调时钟的到期时间放进时间轮, 暂停时取出, 继续时重新换算,
+ * 因此暂停会顺延提醒. 只在最早的到期时间调度一次唤醒, 不在每个 tick 上检查规则.
+ * 不依赖 Android, 与 {@link TimingEngine} 在同一线程使用.
+ */
+public class AlertScheduler implements TimingEngine.StateListener {
+    public static final int MAX_RULES = 32;
+    private static final long WHEEL_TICK_MS = 1000;
+    private static final int WHEEL_SIZE = 256;
+    private static final long DONE = Long.MAX_VALUE;
+
+    public interface Callback {
+        void onAlert(int rule, long elapsedMillis);
+    }
+
+    private static final class RuleTimeout extends TimingWheel.Timeout {
+        final int rule;
+
+        RuleTimeout(int rule) {
+            this.rule = rule;
+        }
+    }
+
+    private final TimingEngine engine;
+    private final MonotonicClock clock;
+    private final TickScheduler scheduler;
+    private final TimingWheel wheel;
+    private Callback callback;
+
+    private final int[] ruleTimer = new int[MAX_RULES];
+    private final long[] ruleFirst = new long[MAX_RULES];
+    private final long[] ruleRepeat = new long[MAX_RULES];
+    private final String[] ruleMessage = new String[MAX_RULES];
+    // 下一次触发时计时器应走到的时间, 不再触发时为 DONE
+    private final long[] nextThreshold = new long[MAX_RULES];
+    private final RuleTimeout[] timeouts = new RuleTimeout[MAX_RULES];
+    private int ruleCount;
+
+    private long scheduledDeadline = Long.MAX_VALUE;
+    private final Runnable wakeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onWake();
+        }
+    };
+    private final TimingWheel.ExpiryHandler expiryHandler = timeout -> fire(((RuleTimeout) timeout).rule);
+
+    public AlertScheduler(TimingEngine engine, MonotonicClock clock, TickScheduler scheduler) {
+        this.engine = engine;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.wheel = new TimingWheel(WHEEL_TICK_MS, WHEEL_SIZE, clock.now());
+    }
+
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @return 规则编号
+     */
+    public int addRule(int timerId, long firstMillis, long repeatMillis, String message) {
+        if (ruleCount == MAX_RULES) {
+            throw new IllegalStateException("at most " + MAX_RULES + " rules");
+        }
+        if (firstMillis < 0 || repeatMillis < 0) {
+            throw new IllegalArgumentException("thresholds must not be negative");
+        }
+        int rule = ruleCount++;
+        ruleTimer[rule] = timerId;
+        ruleFirst[rule] = firstMillis;
+        ruleRepeat[rule] = repeatMillis;
+        ruleMessage[rule] = message;
+        nextThreshold[rule] = firstMillis;
+        timeouts[rule] = new RuleTimeout(rule);
+        if (engine.getTimers().isRunning(timerId)) {
+            arm(rule, clock.now());
+            reschedule();
+        }
+        return rule;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public int getTimerId(int rule) {
+        return ruleTimer[rule];
+    }
+
+    public String getMessage(int rule) {
+        return ruleMessage[rule];
+    }
+
+    /**
+     * 时间轮中等待触发的规则数, 即正在走的计时器上尚未触发完的规则.
+     */
+    public int getPendingCount() {
+        return wheel.size();
+    }
+
+    @Override
+    public void onStateChanged(int id, int state) {
+        long now = clock.now();
+        boolean affected = false;
+        for (int rule = 0; rule < ruleCount; rule++) {
+            if (ruleTimer[rule] != id) {
+                continue;
+            }
+            affected = true;
+            wheel.cancel(timeouts[rule]);
+            if (state == TimingEngine.STATE_STOPPED) {
+                nextThreshold[rule] = ruleFirst[rule];
+            } else if (state == TimingEngine.STATE_RUNNING) {
+                arm(rule, now);
+            }
+        }
+        if (affected) {
+            reschedule();
+        }
+    }
+
+    public void release() {
+        scheduler.cancel(wakeRunnable);
+        scheduledDeadline = Long.MAX_VALUE;
+    }
+
+    private void arm(int rule, long now) {
+        long elapsed = engine.getElapsedMillis(ruleTimer[rule]);
+        long threshold = nextThreshold[rule];
+        if (threshold != DONE && threshold < elapsed) {
+            // 计时器已越过阈值 (例如从检查点恢复), 不补发, 跳到下一个阈值
+            if (ruleRepeat[rule] > 0) {
+                long missed = (elapsed - threshold + ruleRepeat[rule] - 1) / ruleRepeat[rule];
+                threshold += missed * ruleRepeat[rule];
+            } else {
+                threshold = DONE;
+            }
+            nextThreshold[rule] = threshold;
+        }
+        if (threshold != DONE) {
+            wheel.schedule(timeouts[rule], now + threshold - elapsed);
+        }
+    }
+
+    private void onWake() {
+        scheduledDeadline = Long.MAX_VALUE;
+        wheel.advance(clock.now(), expiryHandler);
+        reschedule();
+    }
+
+    private void fire(int rule) {
+        int timer = ruleTimer[rule];
+        if (!engine.getTimers().isRunning(timer)) {
+            return;
+        }
+        if (callback != null) {
+            callback.onAlert(rule, engine.getElapsedMillis(timer));
+        }
+        if (ruleRepeat[rule] > 0) {
+            nextThreshold[rule] += ruleRepeat[rule];
+            arm(rule, clock.now());
+        } else {
+            nextThreshold[rule] = DONE;
+        }
+    }
+
+    // 只保留一个唤醒, 对准时间轮中最早可取出的时间
+    private void reschedule() {
+        long next = wheel.nextExpiryTime();
+        if (next == scheduledDeadline) {
+            return;
+        }
+        scheduler.cancel(wakeRunnable);
+        scheduledDeadline = next;
+        if (next != Long.MAX_VALUE) {
+            scheduler.schedule(wakeRunnable, Math.max(0, next - clock.now()));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.yueqi.timer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * 计时状态检查点. 文件中有两个定长槽位轮流写入, 每次只覆盖较旧的一个,
+ * 写到一半断电时仍能读出另一个完整的检查点. 写入在后台线程进行, 连续写入会合并.
+ */
+public class CheckpointJournal implements Closeable {
+    private static final int SLOT_SIZE = 64;
+    private static final int PAYLOAD_SIZE = 60;
+
+    public static final class Snapshot {
+        public long sequence;
+        public int state;
+        public long sessionId;
+        // 与 TimingEngine 的同名字段含义相同, 时间基准为开机后的单调时钟
+        public long accumulatedMillis;
+        public long anchorMillis;
+        // 写检查点时的单调时钟和墙上时间
+        public long monotonicMillis;
+        public long wallTime;
+        // 开机次数, 无法获取时为 -1
+        public int bootCount;
+
+        public void copyFrom(Snapshot other) {
+            sequence = other.sequence;
+            state = other.state;
+            sessionId = other.sessionId;
+            accumulatedMillis = other.accumulatedMillis;
+            anchorMillis = other.anchorMillis;
+            monotonicMillis = other.monotonicMillis;
+            wallTime = other.wallTime;
+            bootCount = other.bootCount;
+        }
+
+        /**
+         * 写检查点时已累计的计时.
+         */
+        public long elapsedAtCheckpoint() {
+            if (state == TimingEngine.STATE_RUNNING) {
+                return accumulatedMillis + monotonicMillis - anchorMillis;
+            }
+            return accumulatedMillis;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "CheckpointJournal"));
+    private final Object lock = new Object();
+    private final Snapshot pending = new Snapshot();
+    private boolean writeScheduled;
+    private long sequence;
+
+    // 仅在后台线程使用
+    private final Snapshot writing = new Snapshot();
+    private final byte[] slot = new byte[SLOT_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    private final Runnable writeTask = this::writePending;
+
+    public CheckpointJournal(File path) throws IOException {
+        Snapshot latest = read(path);
+        sequence = latest != null ? latest.sequence : 0;
+        file = new RandomAccessFile(path, "rw");
+    }
+
+    /**
+     * 读出最新的完整检查点, 没有时返回 null.
+     */
+    public static Snapshot read(File path) throws IOException {
+        if (!path.exists()) {
+            return null;
+        }
+        byte[] bytes = new byte[SLOT_SIZE * 2];
+        int length;
+        try (RandomAccessFile in = new RandomAccessFile(path, "r")) {
+            length = (int) Math.min(bytes.length, in.length());
+            in.readFully(bytes, 0, length);
+        }
+        CRC32 crc = new CRC32();
+        Snapshot latest = null;
+        for (int offset = 0; offset + SLOT_SIZE <= length; offset += SLOT_SIZE) {
+            Snapshot snapshot = new Snapshot();
+            if (decode(bytes, offset, crc, snapshot) && (latest == null || snapshot.sequence > latest.sequence)) {
+                latest = snapshot;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 复制 snapshot 后异步写入, 不阻塞调用线程.
+     */
+    public void write(Snapshot snapshot) {
+        synchronized (lock) {
+            pending.copyFrom(snapshot);
+            pending.sequence = ++sequence;
+            if (!writeScheduled) {
+                writeScheduled = true;
+                executor.execute(writeTask);
+            }
+        }
+    }
+
+    private void writePending() {
+        synchronized (lock) {
+            writing.copyFrom(pending);
+            writeScheduled = false;
+        }
+        encode(writing, slot, crc);
+        try {
+            file.getChannel().write(ByteBuffer.wrap(slot), (writing.sequence & 1) * SLOT_SIZE);
+            file.getChannel().force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void encode(Snapshot s, byte[] dst, CRC32 crc) {
+        ByteBuffer buffer = ByteBuffer.wrap(dst);
+        buffer.putLong(s.sequence)
+                .putInt(s.state)
+                .putLong(s.sessionId)
+                .putLong(s.accumulatedMillis)
+                .putLong(s.anchorMillis)
+                .putLong(s.monotonicMillis)
+                .putLong(s.wallTime)
+                .putInt(s.bootCount);
+        crc.reset();
+        crc.update(dst, 0, PAYLOAD_SIZE);
+        buffer.putInt(PAYLOAD_SIZE, (int) crc.getValue());
+    }
+
+    private static boolean decode(byte[] src, int offset, CRC32 crc, Snapshot s) {
+        crc.reset();
+        crc.update(src, offset, PAYLOAD_SIZE);
+        ByteBuffer buffer = ByteBuffer.wrap(src, offset, SLOT_SIZE).slice();
+        if ((int) crc.getValue() != buffer.getInt(PAYLOAD_SIZE)) {
+            return false;
+        }
+        s.sequence = buffer.getLong();
+        s.state = buffer.getInt();
+        s.sessionId = buffer.getLong();
+        s.accumulatedMillis = buffer.getLong();
+        s.anchorMillis = buffer.getLong();
+        s.monotonicMillis = buffer.getLong();
+        s.wallTime = buffer.getLong();
+        s.bootCount = buffer.getInt();
+        return s.sequence > 0;
+    }
+
+    /**
+     * 不等待, 已提交的检查点仍会写完.
+     */
+    @Override
+    public void close() {
+        executor.execute(() -> {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,145 @@
+package com.yueqi.timer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * 按本地日/周/月汇总的驾驶时长, 以及每日最长连续驾驶时长.
+ * 区间查询只遍历范围内的桶, 与会话数量无关. 方法线程安全.
+ * <p>
+ * 日键为本地日期距 1970-01-01 的天数; 周键以周一为一周开始;
+ * 月键为 年 * 12 + (月 - 1).
+ */
+public class DrivingRollups {
+    private static final long DAY_MILLIS = 24 * 3600 * 1000L;
+
+    private final TimeZone timeZone;
+    private final TreeMap<Integer, Long> dayTotals = new TreeMap<>();
+    private final TreeMap<Integer, Long> dayLongest = new TreeMap<>();
+    private final TreeMap<Integer, Long> weekTotals = new TreeMap<>();
+    private final TreeMap<Integer, Long> monthTotals = new TreeMap<>();
+
+    public DrivingRollups(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    public int dayKey(long wallTime) {
+        return (int) Math.floorDiv(wallTime + timeZone.getOffset(wallTime), DAY_MILLIS);
+    }
+
+    public static int weekKey(int dayKey) {
+        // 1970-01-01 是周四
+        return Math.floorDiv(dayKey + 3, 7);
+    }
+
+    public static int monthKey(int dayKey) {
+        // 公历日期换算, 见 Howard Hinnant 的 civil_from_days
+        int z = dayKey + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    /**
+     * 加入一段连续驾驶区间, 跨越本地零点时拆分到各自的日期.
+     */
+    public synchronized void addInterval(long startWallTime, long durationMillis) {
+        if (durationMillis <= 0) {
+            return;
+        }
+        int startDay = dayKey(startWallTime);
+        dayLongest.merge(startDay, durationMillis, Math::max);
+        long wall = startWallTime;
+        long remaining = durationMillis;
+        while (remaining > 0) {
+            int day = dayKey(wall);
+            long nextMidnight = (day + 1) * DAY_MILLIS - timeZone.getOffset(wall);
+            long piece = Math.min(remaining, Math.max(1, nextMidnight - wall));
+            dayTotals.merge(day, piece, Long::sum);
+            weekTotals.merge(weekKey(day), piece, Long::sum);
+            monthTotals.merge(monthKey(day), piece, Long::sum);
+            wall += piece;
+            remaining -= piece;
+        }
+    }
+
+    public synchronized long totalForDays(int fromDay, int toDay) {
+        return sum(dayTotals, fromDay, toDay);
+    }
+
+    public synchronized long totalForWeeks(int fromWeek, int toWeek) {
+        return sum(weekTotals, fromWeek, toWeek);
+    }
+
+    public synchronized long totalForMonths(int fromMonth, int toMonth) {
+        return sum(monthTotals, fromMonth, toMonth);
+    }
+
+    public synchronized long longestStretch(int fromDay, int toDay) {
+        long longest = 0;
+        for (long value : dayLongest.subMap(fromDay, true, toDay, true).values()) {
+            longest = Math.max(longest, value);
+        }
+        return longest;
+    }
+
+    public synchronized void clear() {
+        dayTotals.clear();
+        dayLongest.clear();
+        weekTotals.clear();
+        monthTotals.clear();
+    }
+
+    private static long sum(TreeMap<Integer, Long> buckets, int from, int to) {
+        if (from > to) {
+            return 0;
+        }
+        long total = 0;
+        for (long value : buckets.subMap(from, true, to, true).values()) {
+            total += value;
+        }
+        return total;
+    }
+
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        writeMap(out, dayTotals);
+        writeMap(out, dayLongest);
+        writeMap(out, weekTotals);
+        writeMap(out, monthTotals);
+    }
+
+    public synchronized void readFrom(DataInputStream in) throws IOException {
+        clear();
+        readMap(in, dayTotals);
+        readMap(in, dayLongest);
+        readMap(in, weekTotals);
+        readMap(in, monthTotals);
+    }
+
+    private static void writeMap(DataOutputStream out, TreeMap<Integer, Long> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<Integer, Long> entry : map.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static void readMap(DataInputStream in, TreeMap<Integer, Long> map) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("corrupt rollup bucket count " + size);
+        }
+        for (int i = 0; i < size; i++) {
+            map.put(in.readInt(), in.readLong());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.yueqi.timer;
+
+/**
+ * 把毫秒格式化为 "HH:mm:ss" (可选 ".t" 十分之一秒), 结果写入复用的 char 缓冲区.
+ * 每次格式化不分配对象, 可直接用 TextView.setText(char[], int, int) 显示.
+ * 小时数超过 99 时自动扩展位数. 非线程安全, 每个显示组件各持有一个实例.
+ */
+public final class ElapsedTimeFormatter implements CharSequence {
+    // Long.MAX_VALUE 毫秒约 2.5e12 小时(13 位) + ":mm:ss.t"
+    private static final int MAX_LENGTH = 24;
+
+    private final char[] buffer = new char[MAX_LENGTH];
+    private int length;
+
+    public int format(long millis) {
+        return format(millis, false);
+    }
+
+    /**
+     * @return 写入缓冲区的字符数
+     */
+    public int format(long millis, boolean showTenths) {
+        if (millis < 0) {
+            millis = 0;
+        }
+        long hours = millis / 3600000;
+        int minutes = (int) (millis % 3600000 / 60000);
+        int seconds = (int) (millis % 60000 / 1000);
+
+        int hourDigits = 2;
+        for (long h = hours / 100; h > 0; h /= 10) {
+            hourDigits++;
+        }
+        int pos = hourDigits;
+        for (int i = hourDigits - 1; i >= 0; i--) {
+            buffer[i] = (char) ('0' + hours % 10);
+            hours /= 10;
+        }
+        buffer[pos++] = ':';
+        buffer[pos++] = (char) ('0' + minutes / 10);
+        buffer[pos++] = (char) ('0' + minutes % 10);
+        buffer[pos++] = ':';
+        buffer[pos++] = (char) ('0' + seconds / 10);
+        buffer[pos++] = (char) ('0' + seconds % 10);
+        if (showTenths) {
+            buffer[pos++] = '.';
+            buffer[pos++] = (char) ('0' + millis % 1000 / 100);
+        }
+        length = pos;
+        return pos;
+    }
+
+    /**
+     * 返回内部缓冲区, 有效内容为 [0, length()). 下一次 format 会覆盖内容.
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return buffer[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new String(buffer, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+}
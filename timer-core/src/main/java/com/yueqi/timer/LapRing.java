@@ -0,0 +1,84 @@
+package com.yueqi.timer;
+
+/**
+ * 分段时刻的定长环形缓冲区, 记录分段时的行程计时 (毫秒). 数组在创建时分配, 不装箱,
+ * 会话期间占用的内存不变. 满了之后覆盖最旧的分段; 每个分段同时写入行程日志,
+ * 被覆盖的只是内存中的副本. 不是线程安全的.
+ */
+public class LapRing {
+    private final long[] laps;
+    // 下一次写入的位置
+    private int head;
+    private int size;
+    private long totalCount;
+    // 最近一个被覆盖的分段, 用于计算保留的最旧分段的用时
+    private long lastEvicted;
+
+    public LapRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        laps = new long[capacity];
+    }
+
+    public int capacity() {
+        return laps.length;
+    }
+
+    public void add(long elapsedMillis) {
+        if (size == laps.length) {
+            lastEvicted = laps[head];
+        } else {
+            size++;
+        }
+        laps[head] = elapsedMillis;
+        head = head + 1 == laps.length ? 0 : head + 1;
+        totalCount++;
+    }
+
+    /**
+     * 内存中保留的分段数, 不超过容量.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 本次会话的分段总数, 包括已被覆盖的.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 第 i 个保留的分段时刻, 0 为最旧的.
+     */
+    public long get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("lap " + i + ", size " + size);
+        }
+        int index = head - size + i;
+        return laps[index < 0 ? index + laps.length : index];
+    }
+
+    /**
+     * 第 i 个保留的分段的用时, 即与前一个分段 (第一个分段为会话开始) 的间隔.
+     */
+    public long getSplit(int i) {
+        return get(i) - (i > 0 ? get(i - 1) : lastEvicted);
+    }
+
+    /**
+     * 最近一次分段的时刻, 没有分段时为 0, 当前分段从这里开始计.
+     */
+    public long getLast() {
+        return size > 0 ? get(size - 1) : 0;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        totalCount = 0;
+        lastEvicted = 0;
+    }
+}
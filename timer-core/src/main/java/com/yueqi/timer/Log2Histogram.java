@@ -0,0 +1,122 @@
+package com.yueqi.timer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按 2 的幂分桶的直方图, 用于运行时性能统计. 记录只做几次原子加, 不加锁也不分配对象,
+ * 可在任意线程调用; 读取与记录并发时各项数值可能相差一两次记录.
+ * 第 0 桶为 <= 0 的值, 第 i 桶为 [2^(i-1), 2^i).
+ */
+public class Log2Histogram {
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public static int bucketOf(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * 第 i 桶中的最大值.
+     */
+    public static long bucketUpperBound(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public void record(long value) {
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        if (value > 0) {
+            sum.addAndGet(value);
+        }
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // 其他线程刚更新了最大值, 重新比较
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * 百分位的上界: 至少 fraction 比例的记录不大于返回值. 精度为所在桶的范围, 不超过最大值.
+     */
+    public long getPercentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * 一行摘要, 例如 "n=120 mean=3.2 p50<=3 p90<=7 p99<=15 max=12".
+     */
+    public void appendSummary(StringBuilder out) {
+        out.append("n=").append(getCount())
+                .append(" mean=").append(Math.round(getMean() * 10) / 10.0)
+                .append(" p50<=").append(getPercentile(0.5))
+                .append(" p90<=").append(getPercentile(0.9))
+                .append(" p99<=").append(getPercentile(0.99))
+                .append(" max=").append(getMax());
+    }
+
+    /**
+     * 非空的桶, 例如 "<=1:3 <=3:10 <=7:2".
+     */
+    public void appendBuckets(StringBuilder out) {
+        boolean first = true;
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = buckets.get(i);
+            if (n == 0) {
+                continue;
+            }
+            if (!first) {
+                out.append(' ');
+            }
+            first = false;
+            out.append("<=").append(bucketUpperBound(i)).append(':').append(n);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.yueqi.timer;
+
+/**
+ * 单调时钟, 返回毫秒. 生产环境使用 SystemClock.elapsedRealtime(), 不受系统时间校准影响.
+ */
+public interface MonotonicClock {
+    long now();
+}
@@ -0,0 +1,118 @@
+package com.yueqi.timer;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 计时服务的运行时统计, 进程内累计, 供 dumpsys 和调试面板查看.
+ * 各项可在任意线程记录, 不加锁也不分配对象.
+ */
+public class PerfStats {
+    private final long createdNanos = System.nanoTime();
+    // 调度的 tick 实际执行时刻晚于计划时刻的毫秒数
+    private final Log2Histogram tickLateness = new Log2Histogram();
+    // 一次 tick (含监听器) 在计时线程上的耗时, 微秒
+    private final Log2Histogram tickDuration = new Log2Histogram();
+    // tick 投递到主线程开始回调的耗时, 微秒
+    private final Log2Histogram uiDelivery = new Log2Histogram();
+    // tick 到悬浮窗绘制的耗时, 微秒
+    private final Log2Histogram overlayDraw = new Log2Histogram();
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong notifies = new AtomicLong();
+    // 行程日志丢弃的记录数, 由写入方累计, reset 不清零
+    private volatile LongSupplier tripLogDrops = () -> 0;
+
+    public void recordTick(long latenessMillis, long durationNanos) {
+        tickLateness.record(latenessMillis);
+        tickDuration.record(durationNanos / 1000);
+    }
+
+    public void recordUiDelivery(long nanos) {
+        uiDelivery.record(nanos / 1000);
+    }
+
+    public void recordOverlayDraw(long nanos) {
+        overlayDraw.record(nanos / 1000);
+    }
+
+    public void recordBroadcast() {
+        broadcasts.incrementAndGet();
+    }
+
+    public void recordNotify() {
+        notifies.incrementAndGet();
+    }
+
+    public void setTripLogDrops(LongSupplier droppedRecords) {
+        tripLogDrops = droppedRecords;
+    }
+
+    public long getTripLogDropCount() {
+        return tripLogDrops.getAsLong();
+    }
+
+    public Log2Histogram getTickLateness() {
+        return tickLateness;
+    }
+
+    public Log2Histogram getTickDuration() {
+        return tickDuration;
+    }
+
+    public Log2Histogram getUiDelivery() {
+        return uiDelivery;
+    }
+
+    public Log2Histogram getOverlayDraw() {
+        return overlayDraw;
+    }
+
+    public long getBroadcastCount() {
+        return broadcasts.get();
+    }
+
+    public long getNotifyCount() {
+        return notifies.get();
+    }
+
+    /**
+     * 多行文本; verbose 时附带各直方图的分桶.
+     */
+    public String format(boolean verbose) {
+        StringBuilder out = new StringBuilder(512);
+        out.append("uptime ").append((System.nanoTime() - createdNanos) / 1_000_000_000L).append('s')
+                .append(", broadcasts ").append(getBroadcastCount())
+                .append(", notifies ").append(getNotifyCount())
+                .append(", trip log drops ").append(getTripLogDropCount()).append('\n');
+        appendHistogram(out, "tick lateness (ms)", tickLateness, verbose);
+        appendHistogram(out, "tick duration (us)", tickDuration, verbose);
+        appendHistogram(out, "tick -> ui (us)", uiDelivery, verbose);
+        appendHistogram(out, "tick -> overlay draw (us)", overlayDraw, verbose);
+        return out.toString();
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.print(format(true));
+    }
+
+    public void reset() {
+        tickLateness.reset();
+        tickDuration.reset();
+        uiDelivery.reset();
+        overlayDraw.reset();
+        broadcasts.set(0);
+        notifies.set(0);
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, Log2Histogram histogram, boolean verbose) {
+        out.append(name).append(": ");
+        histogram.appendSummary(out);
+        out.append('\n');
+        if (verbose && histogram.getCount() > 0) {
+            out.append("  ");
+            histogram.appendBuckets(out);
+            out.append('\n');
+        }
+    }
+}
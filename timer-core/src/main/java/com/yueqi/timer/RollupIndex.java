@@ -0,0 +1,197 @@
+package com.yueqi.timer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+/**
+ * 维护 {@link DrivingRollups}: 每个会话结束时增量更新并保存到文件.
+ * 文件丢失或损坏时从行程日志重建; 文件落后于日志时 (例如进程在保存前被杀) 从断点补齐.
+ * 所有回调都在 {@link TripLogWriter} 的后台线程执行.
+ */
+public class RollupIndex implements TripLogWriter.Callback {
+    private static final int MAGIC = 0x524c5550; // "RLUP"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final DrivingRollups rollups;
+
+    // 下次打开时开始补齐的日志位置: 未结束会话的第一条记录, 或日志末尾.
+    // 汇总文件只包含此位置之前已结算的会话, 因此补齐时不会重复计入
+    private long resumeIndex;
+
+    // 当前会话中尚未计入汇总的驾驶区间, 每两个元素为 (开始墙上时间, 时长)
+    private long currentSession;
+    private long currentSessionIndex = -1;
+    private long runStartWall;
+    private long runStartElapsed;
+    private boolean running;
+    private long[] intervals = new long[16];
+    private int intervalCount;
+    private volatile Runnable changeListener;
+
+    public RollupIndex(File file, TimeZone timeZone) {
+        this.file = file;
+        this.rollups = new DrivingRollups(timeZone);
+    }
+
+    public DrivingRollups getRollups() {
+        return rollups;
+    }
+
+    /**
+     * 汇总更新并保存后在后台线程回调.
+     */
+    public void setChangeListener(Runnable listener) {
+        changeListener = listener;
+    }
+
+    @Override
+    public void onOpened(TripRecordSource log) throws IOException {
+        long logSize = log.size();
+        if (!load() || resumeIndex > logSize) {
+            // 汇总文件丢失, 损坏, 或与日志对不上, 全部重建
+            rollups.clear();
+            resumeIndex = 0;
+        }
+        // 已被清理的记录不再扫描, 其汇总保留在汇总文件中
+        resumeIndex = Math.max(resumeIndex, log.getFirstIndex());
+        if (resumeIndex < logSize) {
+            log.scan(resumeIndex, (index, record) -> {
+                apply(index, record);
+                return true;
+            });
+            save(logSize);
+        }
+    }
+
+    @Override
+    public void onAppended(long index, TripRecord record) throws IOException {
+        if (apply(index, record)) {
+            save(index + 1);
+        }
+    }
+
+    /**
+     * @return 会话是否在这条记录处结束
+     */
+    private boolean apply(long index, TripRecord record) {
+        if (record.sessionId != currentSession) {
+            // 上一个会话没有结束记录 (例如进程被杀), 按已有区间结算
+            closeSession();
+            currentSession = record.sessionId;
+            currentSessionIndex = index;
+        }
+        switch (record.type) {
+            case TripRecord.TYPE_START:
+            case TripRecord.TYPE_RESUME:
+                running = true;
+                runStartWall = record.wallTime;
+                runStartElapsed = record.elapsedMillis;
+                break;
+            case TripRecord.TYPE_PAUSE:
+                endRun(record);
+                break;
+            case TripRecord.TYPE_STOP:
+                endRun(record);
+                closeSession();
+                return true;
+        }
+        return false;
+    }
+
+    private void endRun(TripRecord record) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (intervalCount * 2 + 2 > intervals.length) {
+            intervals = Arrays.copyOf(intervals, intervals.length * 2);
+        }
+        intervals[intervalCount * 2] = runStartWall;
+        intervals[intervalCount * 2 + 1] = record.elapsedMillis - runStartElapsed;
+        intervalCount++;
+    }
+
+    private void closeSession() {
+        if (currentSessionIndex < 0) {
+            return;
+        }
+        for (int i = 0; i < intervalCount; i++) {
+            rollups.addInterval(intervals[i * 2], intervals[i * 2 + 1]);
+        }
+        intervalCount = 0;
+        running = false;
+        currentSession = 0;
+        currentSessionIndex = -1;
+    }
+
+    private boolean load() {
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] body = new byte[(int) file.length() - 4];
+            in.readFully(body);
+            int expectedCrc = in.readInt();
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            if ((int) crc.getValue() != expectedCrc) {
+                return false;
+            }
+            DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+            if (bodyIn.readInt() != MAGIC || bodyIn.readInt() != VERSION) {
+                return false;
+            }
+            resumeIndex = bodyIn.readLong();
+            rollups.readFrom(bodyIn);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 先写临时文件再改名, 保证断电后文件要么是旧版本要么是新版本.
+     */
+    private void save(long logPosition) throws IOException {
+        resumeIndex = currentSessionIndex >= 0 ? currentSessionIndex : logPosition;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeInt(MAGIC);
+        body.writeInt(VERSION);
+        body.writeLong(resumeIndex);
+        rollups.writeTo(body);
+        body.flush();
+        CRC32 crc = new CRC32();
+        byte[] data = bytes.toByteArray();
+        crc.update(data, 0, data.length);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.write(data);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("rename " + tmp + " failed");
+        }
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+}
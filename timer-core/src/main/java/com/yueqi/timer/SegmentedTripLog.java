@@ -0,0 +1,591 @@
+package com.yueqi.timer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * 分段的行程日志. 目录中每个段是一个 {@link TripLog} 文件, 文件名为段内第一条记录的全局编号;
+ * 段写满 (记录数或时间跨度达到上限) 后转到新段. 全局编号在清理和合并后保持不变.
+ * <p>
+ * 索引文件 segments.idx 记录每段的起始编号, 记录数和墙上时间范围, 打开时不必扫描已封闭的段,
+ * 按时间范围扫描时跳过整段不相交的段. 索引与段文件对不上时 (例如断电) 重新扫描该段.
+ * <p>
+ * 写入 (append, 清理, 合并) 只能在一个线程上进行; 扫描和读取可在其他线程同时进行,
+ * 清理和合并会等待进行中的扫描结束.
+ */
+public class SegmentedTripLog implements TripRecordSource, Closeable {
+    public static final int DEFAULT_SEGMENT_RECORDS = 4096;
+    public static final long DEFAULT_SEGMENT_SPAN_MILLIS = 31 * 24 * 3600_000L;
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String INDEX_FILE = "segments.idx";
+    private static final int INDEX_MAGIC = 0x53454758; // "SEGX"
+    private static final int INDEX_VERSION = 1;
+
+    private static final class Segment {
+        final long baseIndex;
+        final File file;
+        final TripLog log;
+        // 写线程更新, 扫描线程读取
+        volatile long recordCount;
+        volatile long minWallTime = Long.MAX_VALUE;
+        volatile long maxWallTime = Long.MIN_VALUE;
+
+        Segment(long baseIndex, File file, TripLog log) {
+            this.baseIndex = baseIndex;
+            this.file = file;
+            this.log = log;
+        }
+
+        long endIndex() {
+            return baseIndex + recordCount;
+        }
+
+        void include(long wallTime) {
+            if (wallTime < minWallTime) {
+                minWallTime = wallTime;
+            }
+            if (wallTime > maxWallTime) {
+                maxWallTime = wallTime;
+            }
+        }
+    }
+
+    // 把段内编号换算为全局编号, 并记录调用方是否要求停止
+    private static final class OffsetVisitor implements TripLog.Visitor {
+        private final TripLog.Visitor delegate;
+        private final long fromWallTime;
+        private final long toWallTime;
+        long baseIndex;
+        boolean stopped;
+
+        OffsetVisitor(TripLog.Visitor delegate, long fromWallTime, long toWallTime) {
+            this.delegate = delegate;
+            this.fromWallTime = fromWallTime;
+            this.toWallTime = toWallTime;
+        }
+
+        @Override
+        public boolean visit(long index, TripRecord record) {
+            if (record.wallTime < fromWallTime || record.wallTime >= toWallTime) {
+                return true;
+            }
+            if (!delegate.visit(baseIndex + index, record)) {
+                stopped = true;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private final File dir;
+    private final int maxSegmentRecords;
+    private final long maxSegmentSpanMillis;
+    // 清理和合并会关闭段文件, 持写锁; 扫描和读取持读锁
+    private final ReentrantReadWriteLock filesLock = new ReentrantReadWriteLock();
+    // 按起始编号升序, 最后一段为当前写入的段; 替换数组而不是原地修改
+    private volatile Segment[] segments;
+    private final CRC32 crc = new CRC32();
+    private final TripRecord scratch = new TripRecord();
+
+    private SegmentedTripLog(File dir, int maxSegmentRecords, long maxSegmentSpanMillis) {
+        this.dir = dir;
+        this.maxSegmentRecords = maxSegmentRecords;
+        this.maxSegmentSpanMillis = maxSegmentSpanMillis;
+    }
+
+    public static SegmentedTripLog open(File dir) throws IOException {
+        return open(dir, DEFAULT_SEGMENT_RECORDS, DEFAULT_SEGMENT_SPAN_MILLIS);
+    }
+
+    /**
+     * 打开或创建目录中的日志. 同一目录同一时刻只能有一个实例.
+     *
+     * @param maxSegmentRecords    每段最多记录数
+     * @param maxSegmentSpanMillis 每段第一条到最后一条记录的墙上时间跨度上限
+     */
+    public static SegmentedTripLog open(File dir, int maxSegmentRecords, long maxSegmentSpanMillis)
+            throws IOException {
+        if (maxSegmentRecords <= 0 || maxSegmentSpanMillis <= 0) {
+            throw new IllegalArgumentException("segment limits must be positive");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        SegmentedTripLog log = new SegmentedTripLog(dir, maxSegmentRecords, maxSegmentSpanMillis);
+        try {
+            log.load();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * 旧版本的单文件日志作为编号从 0 开始的第一段移入目录. 目录中已有段时不做处理.
+     *
+     * @return 是否迁移了文件
+     */
+    public static boolean migrate(File legacyFile, File dir) throws IOException {
+        if (!legacyFile.exists()) {
+            return false;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        if (listSegmentFiles(dir).length > 0) {
+            return false;
+        }
+        File target = segmentFile(dir, 0);
+        if (!legacyFile.renameTo(target)) {
+            throw new IOException("rename " + legacyFile + " failed");
+        }
+        return true;
+    }
+
+    private static File segmentFile(File dir, long baseIndex) {
+        // 补零到 19 位, 文件名按字典序即按编号排序
+        return new File(dir, SEGMENT_PREFIX + String.format("%019d", baseIndex) + SEGMENT_SUFFIX);
+    }
+
+    private static File[] listSegmentFiles(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long parseBaseIndex(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void load() throws IOException {
+        File[] tmpFiles = dir.listFiles((d, name) -> name.endsWith(TMP_SUFFIX));
+        if (tmpFiles != null) {
+            // 合并或写索引中途断电留下的临时文件
+            for (File f : tmpFiles) {
+                f.delete();
+            }
+        }
+        Map<Long, long[]> index = readIndex();
+        List<Segment> loaded = new ArrayList<>();
+        long previousEnd = Long.MIN_VALUE;
+        boolean indexStale = false;
+        for (File file : listSegmentFiles(dir)) {
+            long base = parseBaseIndex(file);
+            if (base < 0) {
+                continue;
+            }
+            if (base < previousEnd) {
+                // 合并后断电, 已并入前一段的旧段还没删除
+                file.delete();
+                indexStale = true;
+                continue;
+            }
+            Segment segment = new Segment(base, file, TripLog.open(file));
+            loaded.add(segment);
+            segment.recordCount = segment.log.size();
+            long[] entry = index.get(base);
+            if (entry != null && entry[0] == segment.recordCount) {
+                segment.minWallTime = entry[1];
+                segment.maxWallTime = entry[2];
+            } else {
+                // 当前写入的段每次打开都会走到这里, 最多扫描一个段
+                segment.log.scan(0, (i, record) -> {
+                    segment.include(record.wallTime);
+                    return true;
+                });
+                indexStale = true;
+            }
+            previousEnd = segment.endIndex();
+        }
+        if (loaded.isEmpty()) {
+            loaded.add(new Segment(0, segmentFile(dir, 0), TripLog.open(segmentFile(dir, 0))));
+            indexStale = true;
+        }
+        segments = loaded.toArray(new Segment[0]);
+        if (indexStale || index.size() != segments.length) {
+            writeIndex();
+        }
+    }
+
+    private Map<Long, long[]> readIndex() {
+        Map<Long, long[]> index = new HashMap<>();
+        File file = new File(dir, INDEX_FILE);
+        if (!file.exists()) {
+            return index;
+        }
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            if (data.length < 4) {
+                return index;
+            }
+            CRC32 fileCrc = new CRC32();
+            fileCrc.update(data, 0, data.length - 4);
+            DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(data));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return index;
+            }
+            int count = in.readInt();
+            long[][] entries = new long[count][];
+            long[] bases = new long[count];
+            for (int i = 0; i < count; i++) {
+                bases[i] = in.readLong();
+                entries[i] = new long[]{in.readLong(), in.readLong(), in.readLong()};
+            }
+            if ((int) fileCrc.getValue() != in.readInt()) {
+                return index;
+            }
+            for (int i = 0; i < count; i++) {
+                index.put(bases[i], entries[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            index.clear();
+        }
+        return index;
+    }
+
+    /**
+     * 先写临时文件再改名, 与 RollupIndex 相同.
+     */
+    private void writeIndex() throws IOException {
+        Segment[] current = segments;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeInt(INDEX_MAGIC);
+        body.writeInt(INDEX_VERSION);
+        body.writeInt(current.length);
+        for (Segment s : current) {
+            body.writeLong(s.baseIndex);
+            body.writeLong(s.recordCount);
+            body.writeLong(s.minWallTime);
+            body.writeLong(s.maxWallTime);
+        }
+        body.flush();
+        byte[] data = bytes.toByteArray();
+        CRC32 fileCrc = new CRC32();
+        fileCrc.update(data, 0, data.length);
+
+        File file = new File(dir, INDEX_FILE);
+        File tmp = new File(dir, INDEX_FILE + TMP_SUFFIX);
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.write(data);
+            out.writeInt((int) fileCrc.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("rename " + tmp + " failed");
+        }
+    }
+
+    @Override
+    public long getFirstIndex() {
+        return segments[0].baseIndex;
+    }
+
+    @Override
+    public long size() {
+        Segment[] current = segments;
+        return current[current.length - 1].endIndex();
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * 所有段文件的总大小, 字节.
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (Segment s : segments) {
+            total += s.recordCount * TripRecord.SIZE;
+        }
+        return total;
+    }
+
+    public void append(TripRecord record) throws IOException {
+        byte[] encoded = new byte[TripRecord.SIZE];
+        record.encode(encoded, 0, crc);
+        append(encoded, 0, 1);
+    }
+
+    /**
+     * 追加已编码的记录并落盘, 当前段写满时转到新段. 只能在写线程调用.
+     */
+    public void append(byte[] encoded, int offset, int count) throws IOException {
+        int done = 0;
+        while (done < count) {
+            Segment active = segments[segments.length - 1];
+            long min = active.minWallTime;
+            long max = active.maxWallTime;
+            int n = 0;
+            while (done + n < count && active.recordCount + n < maxSegmentRecords) {
+                int recordOffset = offset + (done + n) * TripRecord.SIZE;
+                // 校验失败的记录照样写入, 由读取方跳过
+                long wall = scratch.decode(encoded, recordOffset, crc) ? scratch.wallTime : max;
+                long newMin = Math.min(min, wall);
+                long newMax = Math.max(max, wall);
+                if (active.recordCount + n > 0 && newMax - newMin >= maxSegmentSpanMillis) {
+                    break;
+                }
+                min = newMin;
+                max = newMax;
+                n++;
+            }
+            if (n == 0) {
+                rotate();
+                continue;
+            }
+            active.log.append(encoded, offset + done * TripRecord.SIZE, n);
+            active.include(min);
+            active.include(max);
+            active.recordCount += n;
+            done += n;
+        }
+    }
+
+    private void rotate() throws IOException {
+        Segment active = segments[segments.length - 1];
+        long base = active.endIndex();
+        File file = segmentFile(dir, base);
+        Segment next = new Segment(base, file, TripLog.open(file));
+        Segment[] grown = Arrays.copyOf(segments, segments.length + 1);
+        grown[grown.length - 1] = next;
+        segments = grown;
+        writeIndex();
+    }
+
+    public boolean read(long index, TripRecord out) throws IOException {
+        filesLock.readLock().lock();
+        try {
+            Segment segment = find(index);
+            return segment != null && segment.log.read(index - segment.baseIndex, out);
+        } finally {
+            filesLock.readLock().unlock();
+        }
+    }
+
+    private Segment find(long index) {
+        Segment[] current = segments;
+        int lo = 0;
+        int hi = current.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Segment s = current[mid];
+            if (index < s.baseIndex) {
+                hi = mid - 1;
+            } else if (index >= s.endIndex()) {
+                lo = mid + 1;
+            } else {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void scan(long fromIndex, TripLog.Visitor visitor) throws IOException {
+        scan(fromIndex, Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    @Override
+    public void scan(long fromWallTime, long toWallTime, TripLog.Visitor visitor) throws IOException {
+        scan(0, fromWallTime, toWallTime, visitor);
+    }
+
+    private void scan(long fromIndex, long fromWallTime, long toWallTime, TripLog.Visitor visitor)
+            throws IOException {
+        OffsetVisitor offsetVisitor = new OffsetVisitor(visitor, fromWallTime, toWallTime);
+        filesLock.readLock().lock();
+        try {
+            Segment[] current = segments;
+            for (int i = 0; i < current.length; i++) {
+                Segment s = current[i];
+                boolean last = i == current.length - 1;
+                if (!last && s.endIndex() <= fromIndex) {
+                    continue;
+                }
+                // 当前写入的段可能在扫描期间增加记录, 不按时间跳过
+                if (!last && (s.recordCount == 0 || s.maxWallTime < fromWallTime || s.minWallTime >= toWallTime)) {
+                    continue;
+                }
+                offsetVisitor.baseIndex = s.baseIndex;
+                s.log.scan(Math.max(0, fromIndex - s.baseIndex), offsetVisitor);
+                if (offsetVisitor.stopped) {
+                    return;
+                }
+            }
+        } finally {
+            filesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 删除整段都早于 minWallTime 的段, 然后在总大小超过 maxBytes 时从最旧的段开始删除.
+     * 当前写入的段不删除. 只能在写线程调用.
+     *
+     * @param minWallTime Long.MIN_VALUE 表示不按时间清理
+     * @param maxBytes    0 表示不按大小清理
+     * @return 删除的段数
+     */
+    public int applyRetention(long minWallTime, long maxBytes) throws IOException {
+        filesLock.writeLock().lock();
+        try {
+            Segment[] current = segments;
+            long totalBytes = getTotalBytes();
+            int drop = 0;
+            while (drop < current.length - 1) {
+                Segment s = current[drop];
+                boolean expired = s.recordCount == 0 || s.maxWallTime < minWallTime;
+                boolean oversized = maxBytes > 0 && totalBytes > maxBytes;
+                if (!expired && !oversized) {
+                    break;
+                }
+                totalBytes -= s.recordCount * TripRecord.SIZE;
+                drop++;
+            }
+            if (drop == 0) {
+                return 0;
+            }
+            segments = Arrays.copyOfRange(current, drop, current.length);
+            // 先更新索引再删文件, 断电后不会引用已删除的段
+            writeIndex();
+            for (int i = 0; i < drop; i++) {
+                current[i].log.close();
+                if (!current[i].file.delete()) {
+                    throw new IOException("delete " + current[i].file + " failed");
+                }
+            }
+            return drop;
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 合并相邻的小段 (记录数不到上限的一半), 合并后每段不超过上限. 当前写入的段不参与.
+     * 每合并一组前检查 shouldStop, 返回 true 时提前结束. 只能在写线程调用.
+     *
+     * @return 减少的段数
+     */
+    public int compact(BooleanSupplier shouldStop) throws IOException {
+        int removed = 0;
+        int i = 0;
+        while (i < segments.length - 1) {
+            if (shouldStop.getAsBoolean()) {
+                break;
+            }
+            Segment[] current = segments;
+            int end = i;
+            long total = current[i].recordCount;
+            while (end + 1 < current.length - 1
+                    && isSmall(current[end]) && isSmall(current[end + 1])
+                    && current[end + 1].baseIndex == current[end].endIndex()
+                    && total + current[end + 1].recordCount <= maxSegmentRecords) {
+                end++;
+                total += current[end].recordCount;
+            }
+            if (end > i) {
+                merge(i, end);
+                removed += end - i;
+            }
+            i++;
+        }
+        return removed;
+    }
+
+    private boolean isSmall(Segment s) {
+        return s.recordCount < maxSegmentRecords / 2;
+    }
+
+    // 把 [from, to] 段的内容按顺序拷贝到一个新文件, 以第一段的文件名替换
+    private void merge(int from, int to) throws IOException {
+        Segment[] current = segments;
+        Segment first = current[from];
+        File tmp = new File(dir, first.file.getName() + TMP_SUFFIX);
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             FileChannel out = fileOut.getChannel()) {
+            for (int i = from; i <= to; i++) {
+                try (FileInputStream in = new FileInputStream(current[i].file);
+                     FileChannel channel = in.getChannel()) {
+                    long length = current[i].recordCount * TripRecord.SIZE;
+                    long copied = 0;
+                    while (copied < length) {
+                        copied += channel.transferTo(copied, length - copied, out);
+                    }
+                }
+            }
+            fileOut.getFD().sync();
+        }
+
+        filesLock.writeLock().lock();
+        try {
+            for (int i = from; i <= to; i++) {
+                current[i].log.close();
+            }
+            if (!tmp.renameTo(first.file)) {
+                throw new IOException("rename " + tmp + " failed");
+            }
+            Segment merged = new Segment(first.baseIndex, first.file, TripLog.open(first.file));
+            merged.recordCount = merged.log.size();
+            for (int i = from; i <= to; i++) {
+                merged.include(current[i].minWallTime);
+                merged.include(current[i].maxWallTime);
+            }
+            Segment[] shrunk = new Segment[current.length - (to - from)];
+            System.arraycopy(current, 0, shrunk, 0, from);
+            shrunk[from] = merged;
+            System.arraycopy(current, to + 1, shrunk, from + 1, current.length - to - 1);
+            segments = shrunk;
+            writeIndex();
+            // 断电在这里时, 打开时会删除已被合并段覆盖的旧文件
+            for (int i = from + 1; i <= to; i++) {
+                current[i].file.delete();
+            }
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Segment[] current = segments;
+        if (current == null) {
+            return;
+        }
+        for (Segment s : current) {
+            s.log.close();
+        }
+    }
+}
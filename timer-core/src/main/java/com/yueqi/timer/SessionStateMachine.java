@@ -0,0 +1,166 @@
+package com.yueqi.timer;
+
+/**
+ * 由电源事件驱动的行程状态机. 车载设备上点火和熄火表现为充电电源接通和断开:
+ * 接通持续 connectDebounce 后开始行程, 断开持续 disconnectDebounce 后结束行程,
+ * 打火时的短暂掉电或熄火后很快重新点火不会把一次行程拆成两次.
+ * <p>
+ * 开机时有电源直接开始 (开机本身说明已点火); 关机时若正在等待断电确认则立即结束,
+ * 否则保留行程, 由开机后的检查点恢复. 不依赖 Android, 所有方法在同一线程调用.
+ */
+public class SessionStateMachine {
+    public static final int STATE_OFF = 0;
+    public static final int STATE_CONNECT_PENDING = 1;
+    public static final int STATE_ON = 2;
+    public static final int STATE_DISCONNECT_PENDING = 3;
+
+    public static final int END_POWER_LOST = 0;
+    public static final int END_SHUTDOWN = 1;
+
+    public interface Listener {
+        void onSessionStart();
+
+        /**
+         * @param reason {@link #END_POWER_LOST} 或 {@link #END_SHUTDOWN}
+         */
+        void onSessionEnd(int reason);
+    }
+
+    private final TickScheduler scheduler;
+    private Listener listener;
+    private long connectDebounceMillis;
+    private long disconnectDebounceMillis;
+    private int state = STATE_OFF;
+    private final Runnable debounceTask = this::onDebounceExpired;
+
+    public SessionStateMachine(TickScheduler scheduler, long connectDebounceMillis, long disconnectDebounceMillis) {
+        this.scheduler = scheduler;
+        setDebounce(connectDebounceMillis, disconnectDebounceMillis);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 只影响之后开始等待的确认, 进行中的等待按原来的时长.
+     */
+    public void setDebounce(long connectDebounceMillis, long disconnectDebounceMillis) {
+        if (connectDebounceMillis < 0 || disconnectDebounceMillis < 0) {
+            throw new IllegalArgumentException("debounce must not be negative");
+        }
+        this.connectDebounceMillis = connectDebounceMillis;
+        this.disconnectDebounceMillis = disconnectDebounceMillis;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * 行程是否在进行, 等待断电确认期间仍算进行中.
+     */
+    public boolean isSessionActive() {
+        return state == STATE_ON || state == STATE_DISCONNECT_PENDING;
+    }
+
+    /**
+     * 进程重启后按当前状态恢复, 不回调.
+     */
+    public void restore(boolean sessionActive) {
+        scheduler.cancel(debounceTask);
+        state = sessionActive ? STATE_ON : STATE_OFF;
+    }
+
+    public void onPowerConnected() {
+        switch (state) {
+            case STATE_OFF:
+                if (connectDebounceMillis == 0) {
+                    start();
+                } else {
+                    state = STATE_CONNECT_PENDING;
+                    scheduler.schedule(debounceTask, connectDebounceMillis);
+                }
+                break;
+            case STATE_DISCONNECT_PENDING:
+                // 断电没有持续到确认时间, 行程继续
+                scheduler.cancel(debounceTask);
+                state = STATE_ON;
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void onPowerDisconnected() {
+        switch (state) {
+            case STATE_CONNECT_PENDING:
+                scheduler.cancel(debounceTask);
+                state = STATE_OFF;
+                break;
+            case STATE_ON:
+                if (disconnectDebounceMillis == 0) {
+                    end(END_POWER_LOST);
+                } else {
+                    state = STATE_DISCONNECT_PENDING;
+                    scheduler.schedule(debounceTask, disconnectDebounceMillis);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 电源已确认接通 (例如系统判断的充电条件已满足), 不再等待.
+     */
+    public void onPowerConfirmed() {
+        scheduler.cancel(debounceTask);
+        if (state == STATE_DISCONNECT_PENDING) {
+            state = STATE_ON;
+        } else if (state != STATE_ON) {
+            start();
+        }
+    }
+
+    public void onBoot(boolean powered) {
+        if (powered) {
+            onPowerConfirmed();
+        } else if (state == STATE_CONNECT_PENDING) {
+            scheduler.cancel(debounceTask);
+            state = STATE_OFF;
+        }
+    }
+
+    public void onShutdown() {
+        scheduler.cancel(debounceTask);
+        if (state == STATE_DISCONNECT_PENDING) {
+            // 熄火后设备随即关机
+            end(END_SHUTDOWN);
+        } else {
+            state = STATE_OFF;
+        }
+    }
+
+    private void onDebounceExpired() {
+        if (state == STATE_CONNECT_PENDING) {
+            start();
+        } else if (state == STATE_DISCONNECT_PENDING) {
+            end(END_POWER_LOST);
+        }
+    }
+
+    private void start() {
+        state = STATE_ON;
+        if (listener != null) {
+            listener.onSessionStart();
+        }
+    }
+
+    private void end(int reason) {
+        state = STATE_OFF;
+        if (listener != null) {
+            listener.onSessionEnd(reason);
+        }
+    }
+}
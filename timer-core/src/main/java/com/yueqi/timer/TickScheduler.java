@@ -0,0 +1,10 @@
+package com.yueqi.timer;
+
+/**
+ * 延迟任务调度接口, 生产环境由 Handler 实现, 测试中可替换为虚拟调度器.
+ */
+public interface TickScheduler {
+    void schedule(Runnable task, long delayMillis);
+
+    void cancel(Runnable task);
+}
@@ -0,0 +1,217 @@
+package com.yueqi.timer;
+
+import java.util.Arrays;
+
+/**
+ * 多个计时器的状态, 按编号存放在基本类型数组中, 不为每个计时器创建对象或调度任务.
+ * 只保存状态和计算逐个计时, 调度由 {@link TimingEngine} 统一完成.
+ * 时间参数均为单调时钟读数, 状态取值同 {@link TimingEngine#STATE_STOPPED} 等.
+ * 计时器数量不限, 数组在添加时按需扩容, 计时中不分配.
+ * 不是线程安全的; 其他线程通过 {@link #snapshot()} 得到的不可变副本读取.
+ */
+public class TimerBank {
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * 某一时刻全部计时器状态的不可变副本. 只在状态变化时生成, 走过的时间由读取方按当前时钟计算,
+     * 因此计时中不需要重新生成.
+     */
+    public static final class Snapshot {
+        private final String[] names;
+        private final int[] states;
+        private final long[] accumulated;
+        private final long[] anchors;
+
+        private Snapshot(TimerBank bank) {
+            int n = bank.count;
+            names = Arrays.copyOf(bank.names, n);
+            states = Arrays.copyOf(bank.states, n);
+            accumulated = Arrays.copyOf(bank.accumulated, n);
+            anchors = Arrays.copyOf(bank.anchors, n);
+        }
+
+        public int size() {
+            return states.length;
+        }
+
+        public String getName(int id) {
+            return names[id];
+        }
+
+        public int getState(int id) {
+            return states[id];
+        }
+
+        public boolean isRunning(int id) {
+            return states[id] == TimingEngine.STATE_RUNNING;
+        }
+
+        public long getElapsedMillis(int id, long now) {
+            if (states[id] == TimingEngine.STATE_RUNNING) {
+                return accumulated[id] + now - anchors[id];
+            }
+            return accumulated[id];
+        }
+    }
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] states = new int[INITIAL_CAPACITY];
+    // 含义同 TimingEngine 的 accumulatedMillis / anchorMillis
+    private long[] accumulated = new long[INITIAL_CAPACITY];
+    private long[] anchors = new long[INITIAL_CAPACITY];
+    private int count;
+    private int runningCount;
+
+    /**
+     * @return 新计时器的编号, 从 0 开始连续分配
+     */
+    public int add(String name) {
+        if (count == states.length) {
+            int capacity = count * 2;
+            names = Arrays.copyOf(names, capacity);
+            states = Arrays.copyOf(states, capacity);
+            accumulated = Arrays.copyOf(accumulated, capacity);
+            anchors = Arrays.copyOf(anchors, capacity);
+        }
+        names[count] = name;
+        states[count] = TimingEngine.STATE_STOPPED;
+        return count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String getName(int id) {
+        checkId(id);
+        return names[id];
+    }
+
+    public void setName(int id, String name) {
+        checkId(id);
+        names[id] = name;
+    }
+
+    public int getState(int id) {
+        checkId(id);
+        return states[id];
+    }
+
+    public boolean isRunning(int id) {
+        return getState(id) == TimingEngine.STATE_RUNNING;
+    }
+
+    public boolean hasRunning() {
+        return runningCount > 0;
+    }
+
+    /**
+     * @return 编号最小的正在计时的计时器, 没有时为 -1
+     */
+    public int firstRunning() {
+        if (runningCount == 0) {
+            return -1;
+        }
+        for (int i = 0; i < count; i++) {
+            if (states[i] == TimingEngine.STATE_RUNNING) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 已暂停时等同于继续, 已停止时从零开始.
+     */
+    public boolean start(int id, long now) {
+        checkId(id);
+        if (states[id] == TimingEngine.STATE_RUNNING) {
+            return false;
+        }
+        if (states[id] == TimingEngine.STATE_STOPPED) {
+            accumulated[id] = 0;
+        }
+        run(id, now);
+        return true;
+    }
+
+    public boolean resume(int id, long now) {
+        checkId(id);
+        if (states[id] != TimingEngine.STATE_PAUSED) {
+            return false;
+        }
+        run(id, now);
+        return true;
+    }
+
+    public boolean pause(int id, long now) {
+        checkId(id);
+        if (states[id] != TimingEngine.STATE_RUNNING) {
+            return false;
+        }
+        accumulated[id] += now - anchors[id];
+        states[id] = TimingEngine.STATE_PAUSED;
+        runningCount--;
+        return true;
+    }
+
+    public boolean stop(int id) {
+        checkId(id);
+        if (states[id] == TimingEngine.STATE_STOPPED) {
+            return false;
+        }
+        if (states[id] == TimingEngine.STATE_RUNNING) {
+            runningCount--;
+        }
+        accumulated[id] = 0;
+        states[id] = TimingEngine.STATE_STOPPED;
+        return true;
+    }
+
+    public void restore(int id, int state, long accumulatedMillis, long anchorMillis) {
+        checkId(id);
+        if (states[id] == TimingEngine.STATE_RUNNING) {
+            runningCount--;
+        }
+        if (state == TimingEngine.STATE_RUNNING) {
+            runningCount++;
+        }
+        states[id] = state;
+        accumulated[id] = state == TimingEngine.STATE_STOPPED ? 0 : accumulatedMillis;
+        anchors[id] = anchorMillis;
+    }
+
+    public long getElapsedMillis(int id, long now) {
+        checkId(id);
+        if (states[id] == TimingEngine.STATE_RUNNING) {
+            return accumulated[id] + now - anchors[id];
+        }
+        return accumulated[id];
+    }
+
+    public long getAccumulatedMillis(int id) {
+        checkId(id);
+        return accumulated[id];
+    }
+
+    public long getAnchorMillis(int id) {
+        checkId(id);
+        return anchors[id];
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    private void run(int id, long now) {
+        anchors[id] = now;
+        states[id] = TimingEngine.STATE_RUNNING;
+        runningCount++;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= count) {
+            throw new IndexOutOfBoundsException("timer " + id);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.yueqi.timer;
+
+/**
+ * 计时引擎: 基于单调时钟累计时间, 并在每个整秒边界调度下一次 tick.
+ * 除主计时 ({@link #PRIMARY}) 外可以添加多个计时器, 所有计时器共用同一次 tick:
+ * 主计时在走时对齐主计时的整秒, 否则对齐编号最小的在走计时器.
+ * 不依赖 Android, 可在 JVM 上直接测试.
+ */
+public class TimingEngine {
+    public static final int STATE_STOPPED = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_PAUSED = 2;
+    public static final int PRIMARY = 0;
+
+    /**
+     * 每次 tick 和任一计时器状态变化时回调, 参数为主计时的状态.
+     */
+    public interface Listener {
+        void onTick(long elapsedMillis, boolean running);
+    }
+
+    /**
+     * 任一计时器开始, 暂停, 停止或恢复时回调, 在 {@link Listener} 之前.
+     */
+    public interface StateListener {
+        void onStateChanged(int id, int state);
+    }
+
+    /**
+     * 调度触发的 tick 的度量, 在 tick 完成后回调, 用于性能统计.
+     */
+    public interface TickProbe {
+        void onScheduledTick(long latenessMillis, long durationNanos);
+    }
+
+    private final MonotonicClock clock;
+    private final TickScheduler scheduler;
+    private long tickIntervalMillis;
+    // 由调度触发的 tick 次数, 不含状态变化时的立即回调
+    private long wakeupCount;
+    private final TimerBank timers = new TimerBank();
+    private Listener listener;
+    private StateListener stateListener;
+    private TickProbe tickProbe;
+    // 已调度的 tick 的计划时刻
+    private long scheduledTickAt;
+
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            wakeupCount++;
+            if (tickProbe == null) {
+                tick();
+                return;
+            }
+            long lateness = clock.now() - scheduledTickAt;
+            long start = System.nanoTime();
+            tick();
+            tickProbe.onScheduledTick(lateness, System.nanoTime() - start);
+        }
+    };
+
+    public TimingEngine(MonotonicClock clock, TickScheduler scheduler) {
+        this(clock, scheduler, 1000);
+    }
+
+    public TimingEngine(MonotonicClock clock, TickScheduler scheduler, long tickIntervalMillis) {
+        if (tickIntervalMillis <= 0) {
+            throw new IllegalArgumentException("tickIntervalMillis must be positive");
+        }
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.tickIntervalMillis = tickIntervalMillis;
+        timers.add(null);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setStateListener(StateListener stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    public void setTickProbe(TickProbe tickProbe) {
+        this.tickProbe = tickProbe;
+    }
+
+    /**
+     * 修改 tick 间隔, 计时不受影响. 0 表示不再调度 tick, 只在状态变化时回调,
+     * 走过的时间需要时通过 {@link #getElapsedMillis()} 读取.
+     */
+    public void setTickIntervalMillis(long tickIntervalMillis) {
+        if (tickIntervalMillis < 0) {
+            throw new IllegalArgumentException("tickIntervalMillis must not be negative");
+        }
+        if (this.tickIntervalMillis == tickIntervalMillis) {
+            return;
+        }
+        this.tickIntervalMillis = tickIntervalMillis;
+        scheduler.cancel(tickRunnable);
+        tick();
+    }
+
+    public long getTickIntervalMillis() {
+        return tickIntervalMillis;
+    }
+
+    public long getWakeupCount() {
+        return wakeupCount;
+    }
+
+    /**
+     * 全部计时器的状态, 只读使用; 状态变化需通过引擎的方法, 以便重新调度.
+     */
+    public TimerBank getTimers() {
+        return timers;
+    }
+
+    /**
+     * @return 新计时器的编号
+     */
+    public int addTimer(String name) {
+        return timers.add(name);
+    }
+
+    /**
+     * 开始计时. 已暂停时等同于继续, 已停止时从零开始.
+     *
+     * @return 状态是否发生了变化
+     */
+    public boolean start() {
+        return start(PRIMARY);
+    }
+
+    public boolean resume() {
+        return resume(PRIMARY);
+    }
+
+    public boolean pause() {
+        return pause(PRIMARY);
+    }
+
+    public boolean stop() {
+        return stop(PRIMARY);
+    }
+
+    public boolean start(int id) {
+        return changed(id, timers.start(id, clock.now()));
+    }
+
+    public boolean resume(int id) {
+        return changed(id, timers.resume(id, clock.now()));
+    }
+
+    public boolean pause(int id) {
+        return changed(id, timers.pause(id, clock.now()));
+    }
+
+    public boolean stop(int id) {
+        return changed(id, timers.stop(id));
+    }
+
+    /**
+     * 从检查点恢复主计时. accumulatedMillis 和 anchorMillis 的含义同 {@link #getAccumulatedMillis()}
+     * 和 {@link #getAnchorMillis()}, anchorMillis 只在 STATE_RUNNING 时有意义.
+     */
+    public void restore(int state, long accumulatedMillis, long anchorMillis) {
+        timers.restore(PRIMARY, state, accumulatedMillis, anchorMillis);
+        changed(PRIMARY, true);
+    }
+
+    /**
+     * 最近一次开始/继续之前累计的时间; 未在计时时即为总计时.
+     */
+    public long getAccumulatedMillis() {
+        return timers.getAccumulatedMillis(PRIMARY);
+    }
+
+    /**
+     * 最近一次开始/继续时的时钟读数.
+     */
+    public long getAnchorMillis() {
+        return timers.getAnchorMillis(PRIMARY);
+    }
+
+    /**
+     * 取消已调度的 tick, 不改变计时状态. 用于宿主销毁时.
+     */
+    public void release() {
+        scheduler.cancel(tickRunnable);
+    }
+
+    public long getElapsedMillis() {
+        return getElapsedMillis(PRIMARY);
+    }
+
+    public long getElapsedMillis(int id) {
+        return timers.getElapsedMillis(id, clock.now());
+    }
+
+    public boolean isRunning() {
+        return timers.isRunning(PRIMARY);
+    }
+
+    public int getState() {
+        return timers.getState(PRIMARY);
+    }
+
+    // 任一计时器状态变化后重新调度, 并立即回调一次
+    private boolean changed(int id, boolean changed) {
+        if (changed) {
+            if (stateListener != null) {
+                stateListener.onStateChanged(id, timers.getState(id));
+            }
+            scheduler.cancel(tickRunnable);
+            if (timers.hasRunning()) {
+                tick();
+            } else {
+                dispatch(timers.getElapsedMillis(PRIMARY, 0), false);
+            }
+        }
+        return changed;
+    }
+
+    private void tick() {
+        if (!timers.hasRunning()) {
+            return;
+        }
+        long now = clock.now();
+        long elapsed = timers.getElapsedMillis(PRIMARY, now);
+        dispatch(elapsed, timers.isRunning(PRIMARY));
+        if (tickIntervalMillis == 0) {
+            return;
+        }
+        int lead = timers.isRunning(PRIMARY) ? PRIMARY : timers.firstRunning();
+        if (lead != PRIMARY) {
+            elapsed = timers.getElapsedMillis(lead, now);
+        }
+        // 对齐到下一个整秒边界, 而不是 "现在 + 1000", 避免误差逐次累积
+        long delay = tickIntervalMillis - elapsed % tickIntervalMillis;
+        scheduledTickAt = now + delay;
+        scheduler.schedule(tickRunnable, delay);
+    }
+
+    private void dispatch(long elapsedMillis, boolean running) {
+        if (listener != null) {
+            listener.onTick(elapsedMillis, running);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.yueqi.timer;
+
+/**
+ * 哈希时间轮. 到期时间按 tick 取模放入槽位, 每个槽位是双向链表, 添加和取消都是 O(1);
+ * 推进时只检查经过的槽位, 槽位中到期时间在后面几圈的条目留到下一圈.
+ * 时间单位为毫秒, 由调用方决定时钟; 不是线程安全的.
+ */
+public class TimingWheel {
+    /**
+     * 时间轮中的一个条目, 可以反复添加, 同一时间只在一个槽位中.
+     */
+    public static class Timeout {
+        private long deadline;
+        private Timeout prev;
+        private Timeout next;
+        private int bucket = -1;
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isScheduled() {
+            return bucket >= 0;
+        }
+    }
+
+    public interface ExpiryHandler {
+        void onExpired(Timeout timeout);
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final Timeout[] buckets;
+    // 最近一次推进到的 tick, 此前 (含) 的槽位都已处理
+    private long currentTick;
+    private int size;
+    // 推进时暂存已到期的条目, 处理完所有槽位后再回调, 回调中可以重新添加
+    private Timeout expiredHead;
+
+    /**
+     * @param wheelSize 槽位数, 向上取为 2 的幂
+     */
+    public TimingWheel(long tickMillis, int wheelSize, long now) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis and wheelSize must be positive");
+        }
+        int n = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = n - 1;
+        this.buckets = new Timeout[n];
+        this.currentTick = Math.floorDiv(now, tickMillis);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void schedule(Timeout timeout, long deadline) {
+        cancel(timeout);
+        // 向上取整: 处理该槽位时一定已经到期
+        long tick = Math.max(currentTick + 1, -Math.floorDiv(-deadline, tickMillis));
+        timeout.deadline = deadline;
+        link(timeout, (int) (tick & mask));
+        size++;
+    }
+
+    public void cancel(Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return;
+        }
+        unlink(timeout);
+        size--;
+    }
+
+    /**
+     * 推进到 now, 对每个已到期的条目回调一次.
+     *
+     * @return 到期的条目数
+     */
+    public int advance(long now, ExpiryHandler handler) {
+        long targetTick = Math.floorDiv(now, tickMillis);
+        // 跨度超过一圈时每个槽位只需检查一次
+        long from = Math.max(currentTick + 1, targetTick - mask);
+        for (long tick = from; tick <= targetTick; tick++) {
+            Timeout timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadline <= now) {
+                    unlink(timeout);
+                    size--;
+                    timeout.next = expiredHead;
+                    expiredHead = timeout;
+                }
+                timeout = next;
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+
+        int expired = 0;
+        while (expiredHead != null) {
+            Timeout timeout = expiredHead;
+            expiredHead = timeout.next;
+            timeout.next = null;
+            expired++;
+            handler.onExpired(timeout);
+        }
+        return expired;
+    }
+
+    /**
+     * 最早的条目可以由 {@link #advance} 取出的时间, 即其到期时间向上取整到 tick;
+     * 为空时返回 Long.MAX_VALUE. 从当前位置向后扫描槽位, 通常在第一个非空槽位即可确定.
+     */
+    public long nextExpiryTime() {
+        long deadline = nextDeadline();
+        if (deadline == Long.MAX_VALUE) {
+            return deadline;
+        }
+        return Math.max(currentTick + 1, -Math.floorDiv(-deadline, tickMillis)) * tickMillis;
+    }
+
+    /**
+     * 最早的到期时间, 为空时返回 Long.MAX_VALUE.
+     */
+    public long nextDeadline() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (long tick = currentTick + 1; tick <= currentTick + buckets.length; tick++) {
+            long lapEnd = tick * tickMillis;
+            for (Timeout t = buckets[(int) (tick & mask)]; t != null; t = t.next) {
+                earliest = Math.min(earliest, t.deadline);
+            }
+            // 本圈内到期的条目一定早于后面槽位中的所有条目
+            if (earliest <= lapEnd) {
+                return earliest;
+            }
+        }
+        return earliest;
+    }
+
+    private void link(Timeout timeout, int bucket) {
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+}
@@ -0,0 +1,252 @@
+package com.yueqi.timer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 把行程日志流式导出为 CSV 或 JSON, 每条日志记录一行.
+ * 记录经 {@link TripRecordSource#scan(long, long, TripLog.Visitor)} 分批读出, 直接编码进固定大小的字节缓冲区后写入输出流,
+ * 内存占用与记录数无关, 导出过程中不为每条记录分配对象. 输出只含 ASCII 字符.
+ * 在调用 {@link #export} 的线程上执行, 其他线程可通过 {@link #cancel()} 取消.
+ */
+public class TripExporter {
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_JSON = 1;
+
+    private static final int BUFFER_SIZE = 8192;
+    // 单条记录编码后的长度上限, 缓冲区剩余空间不足时先写出
+    private static final int MAX_ROW_LENGTH = 256;
+    private static final int PROGRESS_INTERVAL = 4096;
+    private static final long DAY_MILLIS = 24 * 3600 * 1000L;
+
+    public interface ProgressListener {
+        /**
+         * 每扫描一批记录和结束时在导出线程上回调.
+         */
+        void onProgress(long scanned, long total);
+    }
+
+    private final int format;
+    private final TimeZone timeZone;
+    private long fromWallTime = Long.MIN_VALUE;
+    private long toWallTime = Long.MAX_VALUE;
+    private ProgressListener progressListener;
+    private volatile boolean cancelled;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private OutputStream out;
+    private long exported;
+    private IOException writeError;
+
+    public TripExporter(int format, TimeZone timeZone) {
+        if (format != FORMAT_CSV && format != FORMAT_JSON) {
+            throw new IllegalArgumentException("format " + format);
+        }
+        this.format = format;
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * 只导出墙上时间在 [fromWallTime, toWallTime) 内的记录.
+     */
+    public void setRange(long fromWallTime, long toWallTime) {
+        this.fromWallTime = fromWallTime;
+        this.toWallTime = toWallTime;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 导出到 out, 完成后 flush 但不关闭.
+     *
+     * @return 导出的记录数
+     * @throws CancellationException 导出中途被取消, 已写出的内容不完整
+     */
+    public long export(TripRecordSource log, OutputStream out) throws IOException {
+        this.out = out;
+        position = 0;
+        exported = 0;
+        writeError = null;
+        long first = log.getFirstIndex();
+        long total = log.size() - first;
+        long[] scanned = new long[1];
+        writeHeader();
+        // 分段日志会跳过整段不在范围内的数据, 进度按编号估算
+        log.scan(fromWallTime, toWallTime, (index, record) -> {
+            if (cancelled) {
+                return false;
+            }
+            try {
+                writeRecord(record);
+            } catch (IOException e) {
+                writeError = e;
+                return false;
+            }
+            long done = index - first + 1;
+            if (progressListener != null && done / PROGRESS_INTERVAL != scanned[0] / PROGRESS_INTERVAL) {
+                progressListener.onProgress(done, total);
+            }
+            scanned[0] = done;
+            return true;
+        });
+        if (writeError != null) {
+            throw writeError;
+        }
+        if (cancelled) {
+            throw new CancellationException("export cancelled");
+        }
+        writeFooter();
+        flush();
+        out.flush();
+        if (progressListener != null) {
+            progressListener.onProgress(total, total);
+        }
+        return exported;
+    }
+
+    private void writeHeader() throws IOException {
+        if (format == FORMAT_CSV) {
+            appendAscii("session_id,event,local_time,wall_time_ms,elapsed_ms\n");
+        } else {
+            appendAscii("[");
+        }
+    }
+
+    private void writeFooter() throws IOException {
+        if (format == FORMAT_JSON) {
+            appendAscii(exported == 0 ? "]\n" : "\n]\n");
+        }
+    }
+
+    private void writeRecord(TripRecord record) throws IOException {
+        if (BUFFER_SIZE - position < MAX_ROW_LENGTH) {
+            flush();
+        }
+        if (format == FORMAT_CSV) {
+            appendLong(record.sessionId);
+            appendByte(',');
+            appendAscii(eventName(record.type));
+            appendByte(',');
+            appendLocalTime(record.wallTime);
+            appendByte(',');
+            appendLong(record.wallTime);
+            appendByte(',');
+            appendLong(record.elapsedMillis);
+            appendByte('\n');
+        } else {
+            appendAscii(exported == 0 ? "\n{\"session_id\":" : ",\n{\"session_id\":");
+            appendLong(record.sessionId);
+            appendAscii(",\"event\":\"");
+            appendAscii(eventName(record.type));
+            appendAscii("\",\"local_time\":\"");
+            appendLocalTime(record.wallTime);
+            appendAscii("\",\"wall_time_ms\":");
+            appendLong(record.wallTime);
+            appendAscii(",\"elapsed_ms\":");
+            appendLong(record.elapsedMillis);
+            appendByte('}');
+        }
+        exported++;
+    }
+
+    static String eventName(int type) {
+        switch (type) {
+            case TripRecord.TYPE_START:
+                return "start";
+            case TripRecord.TYPE_PAUSE:
+                return "pause";
+            case TripRecord.TYPE_RESUME:
+                return "resume";
+            case TripRecord.TYPE_STOP:
+                return "stop";
+            case TripRecord.TYPE_LAP:
+                return "lap";
+            default:
+                return "unknown";
+        }
+    }
+
+    // 本地时间 "yyyy-MM-dd HH:mm:ss", 换算同 DrivingRollups.monthKey, 不经过 Calendar
+    private void appendLocalTime(long wallTime) {
+        long local = wallTime + timeZone.getOffset(wallTime);
+        long days = Math.floorDiv(local, DAY_MILLIS);
+        int secondOfDay = (int) (Math.floorMod(local, DAY_MILLIS) / 1000);
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        appendLong(year);
+        appendByte('-');
+        appendTwoDigits(month);
+        appendByte('-');
+        appendTwoDigits(day);
+        appendByte(' ');
+        appendTwoDigits(secondOfDay / 3600);
+        appendByte(':');
+        appendTwoDigits(secondOfDay / 60 % 60);
+        appendByte(':');
+        appendTwoDigits(secondOfDay % 60);
+    }
+
+    private void appendTwoDigits(int value) {
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    private void appendLong(long value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            // Long.MIN_VALUE 取反仍为负数, 日志中不会出现
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // 低位在前写入, 再原地反转
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte t = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = t;
+        }
+    }
+
+    private void appendByte(char c) {
+        buffer[position++] = (byte) c;
+    }
+
+    private void appendAscii(String s) throws IOException {
+        if (BUFFER_SIZE - position < s.length()) {
+            flush();
+        }
+        for (int i = 0; i < s.length(); i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.yueqi.timer;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 按位置分页读取行程记录, 位置 0 为最新的记录. 记录定长, 位置直接换算为日志编号,
+ * 打开时不扫描日志. 页在 executor 上解码, 最近使用的若干页保留在 LRU 缓存中,
+ * 被淘汰的页数组复用, 内存占用只与页大小和缓存页数有关, 与记录总数无关.
+ * 位置在创建时固定, 之后追加的记录不显示, 需要时重新创建.
+ * {@link #get} 可在界面线程调用, 页加载完成后在加载线程上回调 {@link Listener}.
+ */
+public class TripHistoryPager {
+    public static final int DEFAULT_PAGE_SIZE = 64;
+    public static final int DEFAULT_CACHED_PAGES = 8;
+
+    public static final int LOADING = 0;
+    public static final int AVAILABLE = 1;
+    // 编号在缺口中或校验失败
+    public static final int MISSING = 2;
+
+    public interface Listener {
+        /**
+         * 在加载线程上回调.
+         *
+         * @param fromPosition 该页第一条记录的位置
+         */
+        void onPageLoaded(int fromPosition, int count);
+    }
+
+    // 一页记录按字段存放在基本类型数组中, 不为每条记录分配对象
+    private static final class Page {
+        final long[] sessionIds;
+        final long[] wallTimes;
+        final long[] elapsedMillis;
+        final int[] types;
+        final boolean[] valid;
+
+        Page(int size) {
+            sessionIds = new long[size];
+            wallTimes = new long[size];
+            elapsedMillis = new long[size];
+            types = new int[size];
+            valid = new boolean[size];
+        }
+    }
+
+    private final TripRecordSource source;
+    private final int pageSize;
+    private final int maxCachedPages;
+    private final Executor executor;
+    private final long newestIndex;
+    private final int count;
+    // accessOrder 为 true, 最久未使用的页在前
+    private final LinkedHashMap<Integer, Page> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // 已提交加载的页, 数量不超过缓存页数加预读的一页
+    private final int[] pending;
+    private int pendingCount;
+    // 队列满时最近一次未能提交的页, 在有加载完成后补交
+    private int deferredPage = -1;
+    private Page spare;
+    // 最近一次 get 所在的页, 快速滑动时跳过已经滑出范围的页
+    private volatile int currentPage;
+    private volatile Listener listener;
+    private volatile boolean closed;
+
+    // 只在加载线程使用
+    private final Object loadLock = new Object();
+    private Page filling;
+    private long fillTo;
+    private final TripLog.Visitor fillVisitor = (index, record) -> {
+        if (index > fillTo) {
+            return false;
+        }
+        int slot = (int) (fillTo - index);
+        filling.sessionIds[slot] = record.sessionId;
+        filling.wallTimes[slot] = record.wallTime;
+        filling.elapsedMillis[slot] = record.elapsedMillis;
+        filling.types[slot] = record.type;
+        filling.valid[slot] = true;
+        return true;
+    };
+
+    /**
+     * 读取 source 当前的编号范围, 不读记录. 可以在界面线程创建.
+     */
+    public TripHistoryPager(TripRecordSource source, int pageSize, int maxCachedPages, Executor executor)
+            throws IOException {
+        if (pageSize <= 0 || maxCachedPages <= 0) {
+            throw new IllegalArgumentException("pageSize " + pageSize + ", maxCachedPages " + maxCachedPages);
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.maxCachedPages = maxCachedPages;
+        this.executor = executor;
+        this.pending = new int[maxCachedPages + 1];
+        newestIndex = source.size() - 1;
+        count = (int) Math.min(Integer.MAX_VALUE, Math.max(0, source.size() - source.getFirstIndex()));
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public synchronized int getCachedPageCount() {
+        return cache.size();
+    }
+
+    /**
+     * 把 position 处的记录复制到 out. 所在的页不在缓存中时提交加载并返回 {@link #LOADING},
+     * 接近页的边界时顺带预读相邻的页.
+     *
+     * @return {@link #AVAILABLE}, {@link #LOADING} 或 {@link #MISSING}
+     */
+    public int get(int position, TripRecord out) {
+        if (position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("position " + position + ", count " + count);
+        }
+        int pageIndex = position / pageSize;
+        int slot = position % pageSize;
+        int result;
+        int load;
+        int prefetch;
+        synchronized (this) {
+            currentPage = pageIndex;
+            Page page = cache.get(pageIndex);
+            if (page == null) {
+                result = LOADING;
+                load = request(pageIndex, true);
+            } else {
+                result = page.valid[slot] ? AVAILABLE : MISSING;
+                if (result == AVAILABLE) {
+                    out.set(page.types[slot], page.sessionIds[slot], page.wallTimes[slot], page.elapsedMillis[slot]);
+                }
+                load = -1;
+            }
+            if (slot >= pageSize * 3 / 4) {
+                prefetch = (pageIndex + 1) * pageSize < count ? request(pageIndex + 1, false) : -1;
+            } else if (slot < pageSize / 4 && pageIndex > 0) {
+                prefetch = request(pageIndex - 1, false);
+            } else {
+                prefetch = -1;
+            }
+        }
+        // 在锁外提交, executor 同步执行时也不会嵌套持锁
+        submit(load);
+        submit(prefetch);
+        return result;
+    }
+
+    /**
+     * 不再加载和回调, 已提交的加载会跳过.
+     */
+    public void close() {
+        closed = true;
+        listener = null;
+        synchronized (this) {
+            cache.clear();
+            spare = null;
+        }
+    }
+
+    // 需要加载时返回页号, 否则返回 -1. 队列满时只为正在显示的页补交, 预读直接跳过. 调用时持锁
+    private int request(int pageIndex, boolean visible) {
+        if (closed || cache.containsKey(pageIndex)) {
+            return -1;
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            if (pending[i] == pageIndex) {
+                return -1;
+            }
+        }
+        if (pendingCount == pending.length) {
+            if (visible) {
+                deferredPage = pageIndex;
+            }
+            return -1;
+        }
+        pending[pendingCount++] = pageIndex;
+        return pageIndex;
+    }
+
+    private void submit(int pageIndex) {
+        if (pageIndex >= 0) {
+            executor.execute(() -> load(pageIndex));
+        }
+    }
+
+    private void load(int pageIndex) {
+        int fromPosition = pageIndex * pageSize;
+        int size = Math.min(pageSize, count - fromPosition);
+        Page page = null;
+        int deferred;
+        // 排队期间已经滑出缓存能容纳的范围, 不必再读
+        if (!closed && Math.abs(pageIndex - currentPage) <= maxCachedPages / 2) {
+            synchronized (this) {
+                page = spare;
+                spare = null;
+            }
+            if (page == null) {
+                page = new Page(pageSize);
+            }
+            fill(page, newestIndex - fromPosition, size);
+        }
+        synchronized (this) {
+            for (int i = 0; i < pendingCount; i++) {
+                if (pending[i] == pageIndex) {
+                    pending[i] = pending[--pendingCount];
+                    break;
+                }
+            }
+            deferred = -1;
+            if (deferredPage >= 0) {
+                int retry = deferredPage;
+                deferredPage = -1;
+                deferred = request(retry, true);
+            }
+            if (page != null && !closed) {
+                cache.put(pageIndex, page);
+                if (cache.size() > maxCachedPages) {
+                    Iterator<Map.Entry<Integer, Page>> eldest = cache.entrySet().iterator();
+                    spare = eldest.next().getValue();
+                    eldest.remove();
+                }
+            } else {
+                page = null;
+            }
+        }
+        submit(deferred);
+        Listener l = listener;
+        if (page != null && l != null) {
+            l.onPageLoaded(fromPosition, size);
+        }
+    }
+
+    // 按编号升序扫描 [newest - size + 1, newest], 倒序放入页中
+    private void fill(Page page, long newest, int size) {
+        synchronized (loadLock) {
+            for (int i = 0; i < pageSize; i++) {
+                page.valid[i] = false;
+            }
+            filling = page;
+            fillTo = newest;
+            try {
+                source.scan(newest - size + 1, fillVisitor);
+            } catch (IOException e) {
+                // 读取失败的记录显示为缺失
+                e.printStackTrace();
+            } finally {
+                filling = null;
+            }
+        }
+    }
+}
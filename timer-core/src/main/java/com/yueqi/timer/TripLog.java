@@ -0,0 +1,169 @@
+package com.yueqi.timer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的行程日志文件, 由定长 {@link TripRecord} 组成.
+ * 追加只写文件末尾, 不改写已有数据; 打开时截掉断电留下的残缺尾部记录.
+ * 方法均为同步方法, 写入通常经由 {@link TripLogWriter} 在后台线程进行.
+ */
+public class TripLog implements TripRecordSource, Closeable {
+    private static final int SCAN_BATCH = 128;
+
+    public interface Visitor {
+        /**
+         * @return false 停止扫描
+         */
+        boolean visit(long index, TripRecord record);
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[TripRecord.SIZE];
+    private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+    private final TripRecord scratchRecord = new TripRecord();
+    private long recordCount;
+
+    private TripLog(File path, boolean readOnly) throws IOException {
+        this.readOnly = readOnly;
+        file = new RandomAccessFile(path, readOnly ? "r" : "rw");
+        channel = file.getChannel();
+        recordCount = channel.size() / TripRecord.SIZE;
+    }
+
+    /**
+     * 以读写方式打开, 必要时截断尾部的残缺或校验失败的记录.
+     * 同一文件同一时刻只能有一个可写实例.
+     */
+    public static TripLog open(File path) throws IOException {
+        TripLog log = new TripLog(path, false);
+        try {
+            log.recover();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * 只读打开, 不做截断, 可与写入方同时使用.
+     */
+    public static TripLog openReadOnly(File path) throws IOException {
+        return new TripLog(path, true);
+    }
+
+    private void recover() throws IOException {
+        long length = channel.size();
+        long count = length / TripRecord.SIZE;
+        // 断电时最后一批写入可能只落盘了一部分, 从尾部丢弃校验失败的记录
+        while (count > 0 && !readAt(count - 1, scratchRecord)) {
+            count--;
+        }
+        if (count * TripRecord.SIZE != length) {
+            channel.truncate(count * TripRecord.SIZE);
+            channel.force(true);
+        }
+        recordCount = count;
+    }
+
+    public synchronized void append(TripRecord record) throws IOException {
+        record.encode(scratch, 0, crc);
+        append(scratch, 0, 1);
+    }
+
+    /**
+     * 追加已编码的记录并落盘. 代价只与本批记录数有关.
+     */
+    public synchronized void append(byte[] encoded, int offset, int count) throws IOException {
+        if (readOnly) {
+            throw new IOException("trip log opened read-only");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(encoded, offset, count * TripRecord.SIZE);
+        long position = recordCount * TripRecord.SIZE;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.force(false);
+        recordCount += count;
+    }
+
+    @Override
+    public long getFirstIndex() {
+        return 0;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        if (readOnly) {
+            recordCount = channel.size() / TripRecord.SIZE;
+        }
+        return recordCount;
+    }
+
+    /**
+     * @return 记录是否存在且校验通过
+     */
+    public synchronized boolean read(long index, TripRecord out) throws IOException {
+        if (index < 0 || index >= size()) {
+            return false;
+        }
+        return readAt(index, out);
+    }
+
+    private boolean readAt(long index, TripRecord out) throws IOException {
+        scratchBuffer.clear();
+        long position = index * TripRecord.SIZE;
+        while (scratchBuffer.hasRemaining()) {
+            int n = channel.read(scratchBuffer, position + scratchBuffer.position());
+            if (n < 0) {
+                return false;
+            }
+        }
+        return out.decode(scratch, 0, crc);
+    }
+
+    @Override
+    public void scan(long fromIndex, Visitor visitor) throws IOException {
+        byte[] batch = new byte[SCAN_BATCH * TripRecord.SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        CRC32 scanCrc = new CRC32();
+        TripRecord record = new TripRecord();
+        long end = size();
+        for (long index = Math.max(0, fromIndex); index < end; ) {
+            int count = (int) Math.min(SCAN_BATCH, end - index);
+            buffer.clear();
+            buffer.limit(count * TripRecord.SIZE);
+            long position = index * TripRecord.SIZE;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    return;
+                }
+            }
+            for (int i = 0; i < count; i++, index++) {
+                if (record.decode(batch, i * TripRecord.SIZE, scanCrc) && !visitor.visit(index, record)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void scan(long fromWallTime, long toWallTime, Visitor visitor) throws IOException {
+        scan(0, (index, record) -> record.wallTime < fromWallTime || record.wallTime >= toWallTime
+                || visitor.visit(index, record));
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
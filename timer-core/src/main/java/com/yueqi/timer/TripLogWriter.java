@@ -0,0 +1,247 @@
+package com.yueqi.timer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 在单独线程上批量写入 {@link SegmentedTripLog}. append 只把记录编码进内存缓冲区,
+ * 同一批次内的记录由后台线程一次写入并落盘. 打开和恢复日志, 清理和合并也在后台线程完成.
+ * 写入失败的记录留在缓冲区中, 按退避间隔重试 (有新记录时随下一批写出), 最多保留
+ * {@link #MAX_RETAINED_RECORDS} 条, 超出时丢弃最旧的; 丢弃的记录数见 {@link #getDroppedCount()}.
+ * 连续失败只打印第一次的异常.
+ */
+public class TripLogWriter implements Closeable {
+    // 32 字节一条, 约 128KB
+    static final int MAX_RETAINED_RECORDS = 4096;
+    static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    /**
+     * 在后台线程上回调, 用于维护依赖日志的索引.
+     */
+    public interface Callback {
+        void onOpened(TripRecordSource log) throws IOException;
+
+        /**
+         * 记录已落盘后调用, record 对象会被复用.
+         */
+        void onAppended(long index, TripRecord record) throws IOException;
+    }
+
+    private final ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "TripLogWriter"));
+    private final long batchDelayMillis;
+    private final Object lock = new Object();
+    private final CRC32 crc = new CRC32();
+    // 调用方写入 pending, 后台线程交换后写出 writing
+    private byte[] pending = new byte[TripRecord.SIZE * 16];
+    private byte[] writing = new byte[TripRecord.SIZE * 16];
+    private int pendingCount;
+    private boolean flushScheduled;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile SegmentedTripLog log;
+    private final CountDownLatch opened = new CountDownLatch(1);
+    private final Callback callback;
+    // 仅在后台线程使用
+    private final CRC32 writerCrc = new CRC32();
+    private final TripRecord writtenRecord = new TripRecord();
+    // 连续失败时的下一次重试间隔, 写入成功后复位
+    private long retryDelayMillis = MIN_RETRY_DELAY_MS;
+
+    private final Runnable flushTask = this::writePending;
+
+    public TripLogWriter(File dir, long batchDelayMillis) {
+        this(dir, batchDelayMillis, null);
+    }
+
+    /**
+     * @param dir 日志目录, 见 {@link SegmentedTripLog#open(File)}
+     */
+    public TripLogWriter(File dir, long batchDelayMillis, Callback callback) {
+        this.batchDelayMillis = batchDelayMillis;
+        this.callback = callback;
+        // close 时直接写出剩余记录, 未到期的批次和重试不再执行
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.execute(() -> {
+            try {
+                log = SegmentedTripLog.open(dir);
+                if (callback != null) {
+                    callback.onOpened(log);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                opened.countDown();
+            }
+        });
+    }
+
+    /**
+     * 等待后台线程打开日志, 打开失败时返回 null. 不能在主线程调用.
+     */
+    public SegmentedTripLog awaitLog() throws InterruptedException {
+        opened.await();
+        return log;
+    }
+
+    /**
+     * 记录被立即编码, 调用后可复用 record 对象. 不阻塞, 不访问磁盘.
+     */
+    public void append(TripRecord record) {
+        synchronized (lock) {
+            int offset = pendingCount * TripRecord.SIZE;
+            if (offset + TripRecord.SIZE > pending.length) {
+                byte[] grown = new byte[pending.length * 2];
+                System.arraycopy(pending, 0, grown, 0, offset);
+                pending = grown;
+            }
+            record.encode(pending, offset, crc);
+            pendingCount++;
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(flushTask, batchDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 立即写出缓冲区中的记录. 返回的 Future 完成时数据已落盘.
+     */
+    public Future<?> flush() {
+        return executor.submit(flushTask);
+    }
+
+    /**
+     * 因日志无法打开或重试缓冲区已满而丢弃的记录数, 任意线程可调用.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void writePending() {
+        int count;
+        synchronized (lock) {
+            byte[] batch = pending;
+            pending = writing.length >= batch.length ? writing : new byte[batch.length];
+            writing = batch;
+            count = pendingCount;
+            pendingCount = 0;
+            flushScheduled = false;
+        }
+        if (count == 0) {
+            return;
+        }
+        if (log == null) {
+            dropped.addAndGet(count);
+            return;
+        }
+        long firstIndex = log.size();
+        int written = count;
+        try {
+            log.append(writing, 0, count);
+            retryDelayMillis = MIN_RETRY_DELAY_MS;
+        } catch (IOException e) {
+            if (retryDelayMillis == MIN_RETRY_DELAY_MS) {
+                e.printStackTrace();
+            }
+            // 例如分段轮转失败: 已落盘的部分计入了 size, 其余的之后按位置重写, 不会重复
+            written = (int) (log.size() - firstIndex);
+            retain(written, count);
+        }
+        try {
+            if (callback != null) {
+                for (int i = 0; i < written; i++) {
+                    writtenRecord.decode(writing, i * TripRecord.SIZE, writerCrc);
+                    callback.onAppended(firstIndex + i, writtenRecord);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 把 writing 中 [from, count) 的记录放回 pending 之前, 超出上限时丢弃最旧的
+    private void retain(int from, int count) {
+        synchronized (lock) {
+            int failed = count - from;
+            int drop = Math.max(0, failed + pendingCount - MAX_RETAINED_RECORDS);
+            drop = Math.min(drop, failed);
+            failed -= drop;
+            dropped.addAndGet(drop);
+            int total = failed + pendingCount;
+            byte[] merged = pending.length >= total * TripRecord.SIZE ? pending : new byte[total * TripRecord.SIZE];
+            System.arraycopy(pending, 0, merged, failed * TripRecord.SIZE, pendingCount * TripRecord.SIZE);
+            System.arraycopy(writing, (count - failed) * TripRecord.SIZE, merged, 0, failed * TripRecord.SIZE);
+            pending = merged;
+            pendingCount = total;
+            if (total > 0 && !flushScheduled) {
+                try {
+                    executor.schedule(flushTask, retryDelayMillis, TimeUnit.MILLISECONDS);
+                    flushScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    // 已关闭, 不再重试
+                    dropped.addAndGet(total);
+                    pendingCount = 0;
+                }
+            }
+        }
+        retryDelayMillis = Math.min(MAX_RETRY_DELAY_MS, retryDelayMillis * 2);
+    }
+
+    public interface Maintenance {
+        void run(SegmentedTripLog log) throws IOException;
+    }
+
+    /**
+     * 先写出缓冲区中的记录, 再在后台线程上执行 task, 用于清理和合并.
+     * 执行期间新的 append 排在其后写出. 日志打开失败时 task 收到 null.
+     */
+    public Future<?> maintain(Maintenance task) {
+        return executor.submit(() -> {
+            writePending();
+            try {
+                task.run(log);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * 写出剩余记录后关闭, 最多等待 timeoutMillis.
+     */
+    public void close(long timeoutMillis) {
+        executor.execute(flushTask);
+        executor.execute(() -> {
+            try {
+                if (log != null) {
+                    log.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 不等待, 剩余记录仍会在后台线程写出.
+     */
+    @Override
+    public void close() {
+        close(0);
+    }
+}
@@ -0,0 +1,100 @@
+package com.yueqi.timer;
+
+import java.util.zip.CRC32;
+
+/**
+ * 行程日志中的一条定长记录, 可复用以避免扫描时分配对象.
+ * <pre>
+ * 0  long  sessionId   会话开始时的墙上时间
+ * 8  long  wallTime    事件发生时的墙上时间
+ * 16 long  elapsed     事件发生时该会话累计的计时毫秒数
+ * 24 short type
+ * 26 short flags       保留
+ * 28 int   crc32       前 28 字节的校验和
+ * </pre>
+ */
+public final class TripRecord {
+    public static final int SIZE = 32;
+    private static final int CRC_OFFSET = 28;
+
+    public static final int TYPE_START = 1;
+    public static final int TYPE_PAUSE = 2;
+    public static final int TYPE_RESUME = 3;
+    public static final int TYPE_STOP = 4;
+    // 分段 (例如每个送货点一次), elapsedMillis 为分段时的行程计时, 不影响汇总
+    public static final int TYPE_LAP = 5;
+
+    public long sessionId;
+    public long wallTime;
+    public long elapsedMillis;
+    public int type;
+    public int flags;
+
+    public TripRecord set(int type, long sessionId, long wallTime, long elapsedMillis) {
+        this.type = type;
+        this.sessionId = sessionId;
+        this.wallTime = wallTime;
+        this.elapsedMillis = elapsedMillis;
+        this.flags = 0;
+        return this;
+    }
+
+    public void copyFrom(TripRecord other) {
+        sessionId = other.sessionId;
+        wallTime = other.wallTime;
+        elapsedMillis = other.elapsedMillis;
+        type = other.type;
+        flags = other.flags;
+    }
+
+    public void encode(byte[] dst, int offset, CRC32 crc) {
+        putLong(dst, offset, sessionId);
+        putLong(dst, offset + 8, wallTime);
+        putLong(dst, offset + 16, elapsedMillis);
+        dst[offset + 24] = (byte) (type >> 8);
+        dst[offset + 25] = (byte) type;
+        dst[offset + 26] = (byte) (flags >> 8);
+        dst[offset + 27] = (byte) flags;
+        crc.reset();
+        crc.update(dst, offset, CRC_OFFSET);
+        putInt(dst, offset + CRC_OFFSET, (int) crc.getValue());
+    }
+
+    /**
+     * @return 校验和是否正确; 不正确时本对象内容无意义
+     */
+    public boolean decode(byte[] src, int offset, CRC32 crc) {
+        crc.reset();
+        crc.update(src, offset, CRC_OFFSET);
+        if ((int) crc.getValue() != getInt(src, offset + CRC_OFFSET)) {
+            return false;
+        }
+        sessionId = getLong(src, offset);
+        wallTime = getLong(src, offset + 8);
+        elapsedMillis = getLong(src, offset + 16);
+        type = ((src[offset + 24] & 0xff) << 8) | (src[offset + 25] & 0xff);
+        flags = ((src[offset + 26] & 0xff) << 8) | (src[offset + 27] & 0xff);
+        return true;
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        putInt(b, off, (int) (v >>> 32));
+        putInt(b, off + 4, (int) v);
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xffffffffL);
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+                | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+}
@@ -0,0 +1,26 @@
+package com.yueqi.timer;
+
+import java.io.IOException;
+
+/**
+ * 可按编号顺序读取的行程记录. 编号从 {@link #getFirstIndex()} 到 {@link #size()} (不含),
+ * 旧记录被清理后编号不变, 中间可能有缺口.
+ */
+public interface TripRecordSource {
+    long getFirstIndex() throws IOException;
+
+    /**
+     * 下一条追加记录的编号.
+     */
+    long size() throws IOException;
+
+    /**
+     * 从 fromIndex 开始顺序扫描, 跳过校验失败的记录. 回调中的记录对象会被复用.
+     */
+    void scan(long fromIndex, TripLog.Visitor visitor) throws IOException;
+
+    /**
+     * 只回调墙上时间在 [fromWallTime, toWallTime) 内的记录, 实现可以跳过整段不在范围内的数据.
+     */
+    void scan(long fromWallTime, long toWallTime, TripLog.Visitor visitor) throws IOException;
+}
@@ -0,0 +1,179 @@
+package com.yueqi.timer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AlertSchedulerTest {
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private long now;
+    // 每个任务最多一个待执行时间, 与 Handler 的 removeCallbacks + postDelayed 一致
+    private final Map<Runnable, Long> pending = new LinkedHashMap<>();
+    private final List<long[]> firedAlerts = new ArrayList<>();
+    private TimingEngine engine;
+    private AlertScheduler alerts;
+    private TickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        now = 5_000;
+        scheduler = new TickScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                pending.put(task, now + delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                pending.remove(task);
+            }
+        };
+        engine = new TimingEngine(() -> now, scheduler);
+        setUpAlerts();
+    }
+
+    private void setUpAlerts() {
+        alerts = new AlertScheduler(engine, () -> now, scheduler);
+        alerts.setCallback((rule, elapsedMillis) -> firedAlerts.add(new long[]{rule, elapsedMillis}));
+        engine.setStateListener(alerts);
+    }
+
+    // 推进虚拟时间, 依次执行到期的任务
+    private void advanceTo(long time) {
+        while (true) {
+            Runnable next = null;
+            long nextAt = Long.MAX_VALUE;
+            for (Map.Entry<Runnable, Long> e : pending.entrySet()) {
+                if (e.getValue() < nextAt) {
+                    nextAt = e.getValue();
+                    next = e.getKey();
+                }
+            }
+            if (next == null || nextAt > time) {
+                break;
+            }
+            pending.remove(next);
+            now = nextAt;
+            next.run();
+        }
+        now = time;
+    }
+
+    @Test
+    public void firesOnceAtThresholdAndPauseShiftsIt() {
+        int rule = alerts.addRule(TimingEngine.PRIMARY, 2 * HOUR, 0, "rest");
+        engine.start();
+        advanceTo(now + HOUR);
+        engine.pause();
+        assertEquals(0, alerts.getPendingCount());
+        advanceTo(now + 30 * MINUTE);
+        engine.resume();
+        advanceTo(now + HOUR - 1000);
+        assertTrue(firedAlerts.isEmpty());
+        advanceTo(now + 2000);
+        assertEquals(1, firedAlerts.size());
+        assertEquals(rule, firedAlerts.get(0)[0]);
+        assertTrue(firedAlerts.get(0)[1] >= 2 * HOUR && firedAlerts.get(0)[1] < 2 * HOUR + 1000);
+        advanceTo(now + 5 * HOUR);
+        assertEquals(1, firedAlerts.size());
+    }
+
+    @Test
+    public void repeatsAndResetsWhenTimerStops() {
+        int timer = engine.addTimer("continuous");
+        alerts.addRule(timer, 4 * HOUR, 30 * MINUTE, "break");
+        engine.start(timer);
+        advanceTo(now + 5 * HOUR + 10 * MINUTE);
+        // 4h, 4.5h, 5h
+        assertEquals(3, firedAlerts.size());
+        engine.stop(timer);
+        engine.start(timer);
+        advanceTo(now + 4 * HOUR + 1000);
+        assertEquals(4, firedAlerts.size());
+    }
+
+    @Test
+    public void skipsThresholdsPassedWhileRestoring() {
+        alerts.addRule(TimingEngine.PRIMARY, HOUR, 0, "once");
+        alerts.addRule(TimingEngine.PRIMARY, HOUR, HOUR, "hourly");
+        engine.restore(TimingEngine.STATE_RUNNING, 90 * MINUTE, now);
+        assertEquals(1, alerts.getPendingCount());
+        advanceTo(now + 31 * MINUTE);
+        assertEquals(1, firedAlerts.size());
+        assertEquals(1, firedAlerts.get(0)[0]);
+    }
+
+    @Test
+    public void wakesOnlyForDeadlinesNotEveryTick() {
+        // 不调度显示 tick 的引擎, pending 中只剩提醒的唤醒
+        engine = new TimingEngine(() -> now, new TickScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+            }
+        });
+        setUpAlerts();
+        for (int i = 0; i < 10; i++) {
+            alerts.addRule(TimingEngine.PRIMARY, (i + 1) * HOUR, 0, "r" + i);
+        }
+        engine.start();
+        int wakeups = 0;
+        while (!pending.isEmpty()) {
+            int before = firedAlerts.size();
+            advanceTo(pending.values().iterator().next());
+            wakeups++;
+            assertEquals(before + 1, firedAlerts.size());
+        }
+        assertEquals(10, wakeups);
+    }
+
+    @Test
+    public void alarmDeadlineFiresWhileHandlerClockIsFrozen() {
+        // 熄屏深度睡眠: elapsedRealtime 在走, 按 uptime 计时的 Handler 停住, 其中的任务不会执行
+        Map<Runnable, Long> handlerPending = new LinkedHashMap<>();
+        long uptime = now;
+        TickScheduler handlerScheduler = new TickScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                handlerPending.put(task, uptime + delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                handlerPending.remove(task);
+            }
+        };
+        engine = new TimingEngine(() -> now, handlerScheduler);
+        engine.setTickIntervalMillis(0);
+        setUpAlerts();
+        // 对照: 同样的规则由 Handler 唤醒
+        AlertScheduler handlerAlerts = new AlertScheduler(engine, () -> now, handlerScheduler);
+        List<Integer> handlerFired = new ArrayList<>();
+        handlerAlerts.setCallback((rule, elapsedMillis) -> handlerFired.add(rule));
+        engine.setStateListener((id, state) -> {
+            alerts.onStateChanged(id, state);
+            handlerAlerts.onStateChanged(id, state);
+        });
+        alerts.addRule(TimingEngine.PRIMARY, 2 * HOUR, 0, "rest");
+        handlerAlerts.addRule(TimingEngine.PRIMARY, 2 * HOUR, 0, "rest");
+        engine.start();
+
+        // pending 即闹钟, 按 elapsedRealtime 到期
+        advanceTo(now + 3 * HOUR);
+        assertEquals(1, firedAlerts.size());
+        assertTrue(firedAlerts.get(0)[1] >= 2 * HOUR && firedAlerts.get(0)[1] < 2 * HOUR + 1000);
+        assertTrue(handlerFired.isEmpty());
+        assertEquals(1, handlerPending.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.yueqi.timer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class CheckpointJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CheckpointJournal.Snapshot snapshot(long accumulated) {
+        CheckpointJournal.Snapshot s = new CheckpointJournal.Snapshot();
+        s.state = TimingEngine.STATE_RUNNING;
+        s.sessionId = 1_700_000_000_000L;
+        s.accumulatedMillis = accumulated;
+        s.anchorMillis = 5_000;
+        s.monotonicMillis = 65_000;
+        s.wallTime = 1_700_000_060_000L;
+        s.bootCount = 7;
+        return s;
+    }
+
+    // close 不等待, 通过再次读取文件确认写入完成
+    private static CheckpointJournal.Snapshot awaitSequence(File file, long sequence) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            CheckpointJournal.Snapshot s = CheckpointJournal.read(file);
+            if (s != null && s.sequence >= sequence) {
+                return s;
+            }
+            Thread.sleep(10);
+        }
+        fail("checkpoint " + sequence + " not written");
+        return null;
+    }
+
+    @Test
+    public void missingFileHasNoCheckpoint() throws Exception {
+        assertNull(CheckpointJournal.read(new File(folder.getRoot(), "none.bin")));
+    }
+
+    @Test
+    public void readsLatestCheckpoint() throws Exception {
+        File file = new File(folder.getRoot(), "checkpoint.bin");
+        CheckpointJournal journal = new CheckpointJournal(file);
+        journal.write(snapshot(1000));
+        awaitSequence(file, 1);
+        journal.write(snapshot(2000));
+        CheckpointJournal.Snapshot s = awaitSequence(file, 2);
+        journal.close();
+        assertEquals(2000, s.accumulatedMillis);
+        assertEquals(2000 + 60_000, s.elapsedAtCheckpoint());
+        assertEquals(7, s.bootCount);
+        assertEquals(128, file.length());
+
+        // 重新打开后序号继续递增
+        journal = new CheckpointJournal(file);
+        journal.write(snapshot(3000));
+        assertEquals(3000, awaitSequence(file, 3).accumulatedMillis);
+        journal.close();
+    }
+
+    @Test
+    public void fallsBackToOtherSlotWhenLatestIsTorn() throws Exception {
+        File file = new File(folder.getRoot(), "checkpoint.bin");
+        CheckpointJournal journal = new CheckpointJournal(file);
+        journal.write(snapshot(1000));
+        awaitSequence(file, 1);
+        journal.write(snapshot(2000));
+        awaitSequence(file, 2);
+        journal.close();
+        // 序号 2 写在第一个槽位, 模拟写到一半断电
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(20);
+            raf.write(new byte[20]);
+        }
+        CheckpointJournal.Snapshot s = CheckpointJournal.read(file);
+        assertEquals(1, s.sequence);
+        assertEquals(1000, s.accumulatedMillis);
+    }
+}
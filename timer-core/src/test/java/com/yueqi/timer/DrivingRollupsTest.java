@@ -0,0 +1,63 @@
+package com.yueqi.timer;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class DrivingRollupsTest {
+    private static final TimeZone SHANGHAI = TimeZone.getTimeZone("Asia/Shanghai");
+    private static final long HOUR = 3600_000L;
+
+    private static long wall(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(SHANGHAI);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void keysFollowLocalCalendar() {
+        DrivingRollups rollups = new DrivingRollups(SHANGHAI);
+        // 2024-03-04 是周一
+        int monday = rollups.dayKey(wall(2024, 3, 4, 0, 30));
+        int sunday = rollups.dayKey(wall(2024, 3, 10, 23, 59));
+        assertEquals(monday + 6, sunday);
+        assertEquals(DrivingRollups.weekKey(monday), DrivingRollups.weekKey(sunday));
+        assertEquals(DrivingRollups.weekKey(monday) + 1, DrivingRollups.weekKey(sunday + 1));
+        assertEquals(2024 * 12 + 2, DrivingRollups.monthKey(monday));
+        assertEquals(2024 * 12 + 1, DrivingRollups.monthKey(rollups.dayKey(wall(2024, 2, 29, 12, 0))));
+        assertEquals(1999 * 12 + 11, DrivingRollups.monthKey(rollups.dayKey(wall(1999, 12, 31, 23, 0))));
+    }
+
+    @Test
+    public void splitsIntervalsAcrossMidnightAndMonthEnd() {
+        DrivingRollups rollups = new DrivingRollups(SHANGHAI);
+        rollups.addInterval(wall(2024, 3, 31, 23, 0), 2 * HOUR);
+        int march31 = rollups.dayKey(wall(2024, 3, 31, 12, 0));
+        assertEquals(HOUR, rollups.totalForDays(march31, march31));
+        assertEquals(HOUR, rollups.totalForDays(march31 + 1, march31 + 1));
+        assertEquals(HOUR, rollups.totalForMonths(2024 * 12 + 2, 2024 * 12 + 2));
+        assertEquals(HOUR, rollups.totalForMonths(2024 * 12 + 3, 2024 * 12 + 3));
+        // 连续驾驶计入开始的那一天, 不拆分
+        assertEquals(2 * HOUR, rollups.longestStretch(march31, march31));
+        assertEquals(0, rollups.longestStretch(march31 + 1, march31 + 1));
+    }
+
+    @Test
+    public void rangeQueriesSumBuckets() {
+        DrivingRollups rollups = new DrivingRollups(SHANGHAI);
+        long start = wall(2024, 1, 1, 8, 0);
+        for (int i = 0; i < 60; i++) {
+            rollups.addInterval(start + i * 24 * HOUR, (i % 3 + 1) * HOUR);
+        }
+        int first = rollups.dayKey(start);
+        assertEquals(120 * HOUR, rollups.totalForDays(first, first + 59));
+        assertEquals(6 * HOUR, rollups.totalForDays(first, first + 2));
+        assertEquals(3 * HOUR, rollups.longestStretch(first, first + 59));
+        assertEquals(61 * HOUR, rollups.totalForMonths(2024 * 12, 2024 * 12));
+        assertEquals(0, rollups.totalForDays(first + 100, first + 200));
+    }
+}
@@ -0,0 +1,48 @@
+package com.yueqi.timer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ElapsedTimeFormatterTest {
+    private final ElapsedTimeFormatter formatter = new ElapsedTimeFormatter();
+
+    private String format(long millis, boolean tenths) {
+        int length = formatter.format(millis, tenths);
+        return new String(formatter.getBuffer(), 0, length);
+    }
+
+    @Test
+    public void matchesStringFormatBelow100Hours() {
+        long[] samples = {0, 999, 1000, 59_999, 60_000, 3_599_999, 3_600_000, 86_399_000, 359_999_999};
+        for (long millis : samples) {
+            String expected = String.format("%02d:%02d:%02d",
+                    millis / 3600000, millis % 3600000 / 60000, millis % 60000 / 1000);
+            assertEquals(expected, format(millis, false));
+        }
+    }
+
+    @Test
+    public void extendsHourDigitsBeyond99Hours() {
+        assertEquals("100:00:00", format(360_000_000L, false));
+        assertEquals("1234:05:06", format(1234 * 3600000L + 5 * 60000 + 6000, false));
+        // 旧实现的 (int) 强转在约 24.8 天后溢出
+        assertEquals("720:00:00", format(30L * 24 * 3600000, false));
+        assertTrue(format(Long.MAX_VALUE, false).startsWith(Long.MAX_VALUE / 3600000 + ":"));
+    }
+
+    @Test
+    public void formatsTenthsAndClampsNegative() {
+        assertEquals("00:00:01.2", format(1299, true));
+        assertEquals("00:00:00", format(-5, false));
+    }
+
+    @Test
+    public void actsAsCharSequence() {
+        formatter.format(3_723_000);
+        assertEquals(8, formatter.length());
+        assertEquals('3', formatter.charAt(7));
+        assertEquals("02:03", formatter.subSequence(3, 8).toString());
+        assertEquals("01:02:03", formatter.toString());
+    }
+}
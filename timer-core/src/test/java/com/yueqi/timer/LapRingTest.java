@@ -0,0 +1,55 @@
+package com.yueqi.timer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LapRingTest {
+
+    @Test
+    public void keepsMostRecentLapsAndSplits() {
+        LapRing ring = new LapRing(3);
+        assertEquals(0, ring.getLast());
+        ring.add(1000);
+        ring.add(2500);
+        assertEquals(2, ring.size());
+        assertEquals(1000, ring.getSplit(0));
+        assertEquals(1500, ring.getSplit(1));
+
+        ring.add(4000);
+        ring.add(7000);
+        ring.add(7200);
+        // 1000 和 2500 已被覆盖, 只保留最近三个
+        assertEquals(3, ring.size());
+        assertEquals(5, ring.getTotalCount());
+        assertEquals(4000, ring.get(0));
+        assertEquals(7200, ring.getLast());
+        assertEquals(1500, ring.getSplit(0));
+        assertEquals(3000, ring.getSplit(1));
+        assertEquals(200, ring.getSplit(2));
+
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.getTotalCount());
+        ring.add(300);
+        assertEquals(300, ring.getSplit(0));
+    }
+
+    @Test
+    public void addingLapsDoesNotAllocate() {
+        LapRing ring = new LapRing(256);
+        for (int i = 0; i < 1000; i++) {
+            ring.add(i);
+        }
+        long before = ThreadAllocations.current();
+        long sum = 0;
+        for (int i = 0; i < 100_000; i++) {
+            ring.add(i * 1000L);
+            sum += ring.getSplit(ring.size() - 1);
+        }
+        long allocated = ThreadAllocations.current() - before;
+        assertEquals(100_000L * 1000 - 1000 - 999, sum);
+        // 装箱一次就有 16 字节, 十万次远超这个上限
+        assertTrue("allocated " + allocated + " bytes", allocated < 64 * 1024);
+    }
+}
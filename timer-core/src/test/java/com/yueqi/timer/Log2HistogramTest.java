@@ -0,0 +1,65 @@
+package com.yueqi.timer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Log2HistogramTest {
+    @Test
+    public void bucketsArePowersOfTwo() {
+        assertEquals(0, Log2Histogram.bucketOf(-5));
+        assertEquals(0, Log2Histogram.bucketOf(0));
+        assertEquals(1, Log2Histogram.bucketOf(1));
+        assertEquals(2, Log2Histogram.bucketOf(2));
+        assertEquals(2, Log2Histogram.bucketOf(3));
+        assertEquals(11, Log2Histogram.bucketOf(1024));
+        assertEquals(63, Log2Histogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(3, Log2Histogram.bucketUpperBound(2));
+        assertEquals(Long.MAX_VALUE, Log2Histogram.bucketUpperBound(63));
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBoundsCappedAtMax() {
+        Log2Histogram histogram = new Log2Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(5);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(14.5, histogram.getMean(), 1e-9);
+        assertEquals(100, histogram.getMax());
+        assertEquals(7, histogram.getPercentile(0.5));
+        assertEquals(7, histogram.getPercentile(0.9));
+        assertEquals(100, histogram.getPercentile(0.99));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws Exception {
+        Log2Histogram histogram = new Log2Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long base = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(base * 1000 + i % 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        long total = 0;
+        for (int i = 0; i < Log2Histogram.BUCKETS; i++) {
+            total += histogram.getBucketCount(i);
+        }
+        assertEquals(200_000, total);
+        assertEquals(3999, histogram.getMax());
+    }
+}
@@ -0,0 +1,283 @@
+package com.yueqi.timer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 在虚拟时钟上回放一天到三十天的行程, 随机穿插暂停/继续, 进程被杀, 系统校时和重启设备,
+ * 每个事件后核对计时与按虚拟时间独立累加的结果完全相等, 并检查 tick 次数上限和内存分配.
+ * 宿主的检查点和恢复规则与 TimerService 一致.
+ */
+public class LongRunSimulationTest {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long CHECKPOINT_INTERVAL = MINUTE;
+    private static final long SCREEN_OFF_CHECKPOINT_INTERVAL = 5 * MINUTE;
+
+    private VirtualScheduler clock;
+    // 代替检查点文件, 进程被杀和重启设备后仍然保留
+    private CheckpointJournal.Snapshot saved;
+    private final ElapsedTimeFormatter formatter = new ElapsedTimeFormatter();
+    private Host host;
+    private long runningTicks;
+    private long retiredWakeups;
+
+    /**
+     * 计时服务中与计时相关的部分: 引擎, 定期检查点和恢复.
+     * tick 间隔为 0 时与熄屏一致, 计时中由低频的检查点闹钟代替 tick 写检查点.
+     */
+    private final class Host {
+        final TimingEngine engine;
+        final boolean screenOff;
+        long lastCheckpoint;
+        final Runnable screenOffCheckpoint = () -> {
+            writeCheckpoint();
+            updateScreenOffCheckpoint();
+        };
+
+        Host(long tickIntervalMillis) {
+            screenOff = tickIntervalMillis == 0;
+            engine = new TimingEngine(clock, clock);
+            // 0 与熄屏时一致, 不再定时回调
+            engine.setTickIntervalMillis(tickIntervalMillis);
+            engine.setListener((elapsedMillis, running) -> {
+                if (running) {
+                    runningTicks++;
+                    formatter.format(elapsedMillis);
+                    if (clock.now() - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                        writeCheckpoint();
+                    }
+                }
+            });
+            restore();
+            updateScreenOffCheckpoint();
+        }
+
+        void updateScreenOffCheckpoint() {
+            if (screenOff && engine.isRunning()) {
+                clock.schedule(screenOffCheckpoint, SCREEN_OFF_CHECKPOINT_INTERVAL);
+            } else {
+                clock.cancel(screenOffCheckpoint);
+            }
+        }
+
+        void restore() {
+            if (saved.state == TimingEngine.STATE_STOPPED) {
+                return;
+            }
+            boolean sameBoot = saved.monotonicMillis <= clock.now() && saved.bootCount == clock.getBootCount();
+            if (sameBoot) {
+                engine.restore(saved.state, saved.accumulatedMillis, saved.anchorMillis);
+            } else {
+                engine.restore(TimingEngine.STATE_PAUSED, saved.elapsedAtCheckpoint(), 0);
+            }
+        }
+
+        void writeCheckpoint() {
+            lastCheckpoint = clock.now();
+            saved.sequence++;
+            saved.state = engine.getState();
+            saved.accumulatedMillis = engine.getAccumulatedMillis();
+            saved.anchorMillis = engine.getAnchorMillis();
+            saved.monotonicMillis = clock.now();
+            saved.wallTime = clock.wallTime();
+            saved.bootCount = clock.getBootCount();
+        }
+
+        void start() {
+            engine.start();
+            writeCheckpoint();
+            updateScreenOffCheckpoint();
+        }
+
+        void pause() {
+            engine.pause();
+            writeCheckpoint();
+            updateScreenOffCheckpoint();
+        }
+    }
+
+    // 按虚拟时间独立累加的期望值, 以及 tick 次数上限
+    private long expected;
+    private boolean running;
+    private long runLength;
+    private long wakeupBound;
+
+    private void setUp(long tickIntervalMillis) {
+        clock = new VirtualScheduler(5 * MINUTE, 1_709_251_200_000L);
+        saved = new CheckpointJournal.Snapshot();
+        expected = 0;
+        running = false;
+        runLength = 0;
+        wakeupBound = 0;
+        retiredWakeups = 0;
+        host = new Host(tickIntervalMillis);
+    }
+
+    private void advance(long millis) {
+        clock.advanceBy(millis);
+        if (running) {
+            expected += millis;
+            runLength += millis;
+        }
+    }
+
+    // 一段连续计时最多跨过 runLength / 1000 + 1 个整秒边界, 每个边界一次唤醒
+    private void endRun() {
+        if (runLength > 0) {
+            wakeupBound += runLength / SECOND + 1;
+        }
+        runLength = 0;
+    }
+
+    private void retireHost() {
+        retiredWakeups += host.engine.getWakeupCount();
+        host.engine.release();
+    }
+
+    private long totalWakeups() {
+        return retiredWakeups + host.engine.getWakeupCount();
+    }
+
+    private void assertElapsed() {
+        long actual = host.engine.getElapsedMillis();
+        assertEquals(expected, actual);
+        // 独立的格式化结果, 覆盖小时数超过 99 和 int 范围的情况
+        formatter.format(actual);
+        assertEquals(String.format("%02d:%02d:%02d", actual / HOUR, actual % HOUR / MINUTE, actual % MINUTE / SECOND),
+                formatter.toString());
+    }
+
+    private void replay(long seed, long days) {
+        setUp(SECOND);
+        Random random = new Random(seed);
+        // 重启后单调时钟归零, 所以单独记录剩余的模拟时间
+        long remaining = days * DAY;
+        host.start();
+        running = true;
+        int reboots = 0;
+        while (remaining > 0) {
+            // 多数间隔在一小时内, 偶尔停车过夜
+            long step = random.nextInt(10) == 0
+                    ? HOUR + random.nextInt((int) (10 * HOUR))
+                    : SECOND + random.nextInt((int) HOUR);
+            step = Math.min(step, remaining);
+            advance(step);
+            remaining -= step;
+            int event = random.nextInt(100);
+            if (event < 40) {
+                endRun();
+                if (running) {
+                    host.pause();
+                } else {
+                    host.start();
+                }
+                running = !running;
+            } else if (event < 55) {
+                endRun();
+                retireHost();
+                clock.killProcess();
+                host = new Host(SECOND);
+            } else if (event < 62) {
+                clock.jumpWallClock((random.nextInt(48) - 24) * HOUR);
+            } else if (event < 64) {
+                endRun();
+                long before = expected;
+                retireHost();
+                clock.reboot(random.nextInt((int) HOUR), 20 * SECOND);
+                host = new Host(SECOND);
+                // 重启后只能恢复到最后一个检查点, 并以暂停状态恢复
+                expected = saved.elapsedAtCheckpoint();
+                assertTrue("lost " + (before - expected), before - expected <= CHECKPOINT_INTERVAL + SECOND);
+                assertEquals(TimingEngine.STATE_PAUSED, host.engine.getState());
+                running = false;
+                reboots++;
+            }
+            assertElapsed();
+        }
+        endRun();
+        assertTrue("wakeups " + totalWakeups() + " > " + wakeupBound, totalWakeups() <= wakeupBound);
+        // 调度器里最多有一个 tick
+        assertTrue(clock.getPendingCount() <= 1);
+        assertTrue(days < 10 || reboots > 0);
+    }
+
+    @Test
+    public void dayLongReplayKeepsExactTotals() {
+        for (long seed = 1; seed <= 20; seed++) {
+            replay(seed, 1);
+        }
+    }
+
+    @Test
+    public void monthLongReplayKeepsExactTotals() {
+        replay(42, 30);
+        replay(7, 30);
+    }
+
+    @Test
+    public void screenOffRunsWithoutWakeups() {
+        setUp(0);
+        host.start();
+        running = true;
+        for (int i = 0; i < 24; i++) {
+            advance(HOUR);
+            assertElapsed();
+        }
+        assertEquals(0, host.engine.getWakeupCount());
+        // 只剩检查点闹钟, 检查点跟上了计时
+        assertEquals(1, clock.getPendingCount());
+        assertEquals(expected, saved.elapsedAtCheckpoint());
+        host.pause();
+        assertEquals(0, clock.getPendingCount());
+    }
+
+    @Test
+    public void screenOffThenProcessDeathOrPowerCutKeepsTime() {
+        setUp(0);
+        host.start();
+        running = true;
+        advance(3 * HOUR + 7 * MINUTE);
+
+        // 同一次开机内进程被杀, 按锚点精确恢复并继续计时
+        retireHost();
+        clock.killProcess();
+        host = new Host(0);
+        assertEquals(TimingEngine.STATE_RUNNING, host.engine.getState());
+        assertElapsed();
+
+        // 熄屏中断电, 只能恢复到最后一个检查点, 丢失的时间不超过闹钟间隔
+        advance(2 * HOUR + 3 * MINUTE + 20 * SECOND);
+        long before = expected;
+        retireHost();
+        clock.reboot(10 * MINUTE, 20 * SECOND);
+        host = new Host(0);
+        expected = saved.elapsedAtCheckpoint();
+        running = false;
+        assertTrue("lost " + (before - expected), before - expected <= SCREEN_OFF_CHECKPOINT_INTERVAL);
+        assertEquals(TimingEngine.STATE_PAUSED, host.engine.getState());
+        assertElapsed();
+        assertEquals(0, totalWakeups());
+    }
+
+    @Test
+    public void steadyTickingAllocatesNothing() {
+        setUp(SECOND);
+        host.start();
+        running = true;
+        advance(HOUR);
+        long before = ThreadAllocations.current();
+        long ticksBefore = runningTicks;
+        advance(DAY);
+        long allocated = ThreadAllocations.current() - before;
+        assertEquals(DAY / SECOND, runningTicks - ticksBefore);
+        // 一天 86400 次 tick, 每次哪怕分配一个对象也会超过这个上限
+        assertTrue("allocated " + allocated + " bytes", allocated < 64 * 1024);
+        assertElapsed();
+    }
+}
@@ -0,0 +1,94 @@
+package com.yueqi.timer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class RollupIndexTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long DAY = 24 * 3600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 会话: 驾驶 30 分钟, 暂停 10 分钟, 再驾驶 20 分钟
+    private static void appendSession(TripLog log, long start) throws Exception {
+        TripRecord record = new TripRecord();
+        log.append(record.set(TripRecord.TYPE_START, start, start, 0));
+        log.append(record.set(TripRecord.TYPE_PAUSE, start, start + 1800_000, 1800_000));
+        log.append(record.set(TripRecord.TYPE_RESUME, start, start + 2400_000, 1800_000));
+        log.append(record.set(TripRecord.TYPE_STOP, start, start + 3600_000, 3000_000));
+    }
+
+    private static RollupIndex open(File rollupFile, TripLog log) throws Exception {
+        RollupIndex index = new RollupIndex(rollupFile, UTC);
+        index.onOpened(log);
+        return index;
+    }
+
+    @Test
+    public void rebuildsFromLogAndCatchesUp() throws Exception {
+        File logFile = folder.newFile();
+        File rollupFile = new File(folder.getRoot(), "rollups.bin");
+        try (TripLog log = TripLog.open(logFile)) {
+            appendSession(log, 10 * DAY);
+            appendSession(log, 11 * DAY);
+            RollupIndex index = open(rollupFile, log);
+            assertEquals(6000_000, index.getRollups().totalForDays(10, 11));
+            assertEquals(1800_000, index.getRollups().longestStretch(10, 11));
+            assertTrue(rollupFile.exists());
+
+            // 汇总文件保存后日志又增加了一个会话, 重新打开时只补齐新会话
+            appendSession(log, 12 * DAY);
+            index = open(rollupFile, log);
+            assertEquals(9000_000, index.getRollups().totalForDays(10, 12));
+
+            // 汇总文件丢失时完整重建
+            assertTrue(rollupFile.delete());
+            index = open(rollupFile, log);
+            assertEquals(9000_000, index.getRollups().totalForDays(0, 100));
+        }
+    }
+
+    @Test
+    public void updatesIncrementallyWhenSessionCloses() throws Exception {
+        File logFile = folder.newFile();
+        File rollupFile = new File(folder.getRoot(), "rollups.bin");
+        try (TripLog log = TripLog.open(logFile)) {
+            RollupIndex index = open(rollupFile, log);
+            long start = 20 * DAY;
+            TripRecord record = new TripRecord();
+            index.onAppended(0, record.set(TripRecord.TYPE_START, start, start, 0));
+            index.onAppended(1, record.set(TripRecord.TYPE_PAUSE, start, start + 600_000, 600_000));
+            assertEquals(0, index.getRollups().totalForDays(20, 20));
+            index.onAppended(2, record.set(TripRecord.TYPE_STOP, start, start + 900_000, 600_000));
+            assertEquals(600_000, index.getRollups().totalForDays(20, 20));
+        }
+    }
+
+    @Test
+    public void unfinishedSessionIsCountedOnceWhenNextSessionStarts() throws Exception {
+        File logFile = folder.newFile();
+        File rollupFile = new File(folder.getRoot(), "rollups.bin");
+        try (TripLog log = TripLog.open(logFile)) {
+            long start = 30 * DAY;
+            TripRecord record = new TripRecord();
+            // 进程在会话中被杀, 没有结束记录
+            log.append(record.set(TripRecord.TYPE_START, start, start, 0));
+            log.append(record.set(TripRecord.TYPE_PAUSE, start, start + 600_000, 600_000));
+            RollupIndex index = open(rollupFile, log);
+            assertEquals(0, index.getRollups().totalForDays(30, 30));
+
+            appendSession(log, start + 3600_000);
+            index = open(rollupFile, log);
+            assertEquals(600_000 + 3000_000, index.getRollups().totalForDays(30, 30));
+            index = open(rollupFile, log);
+            assertEquals(600_000 + 3000_000, index.getRollups().totalForDays(30, 30));
+        }
+    }
+}
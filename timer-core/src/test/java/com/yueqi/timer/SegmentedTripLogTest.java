@@ -0,0 +1,117 @@
+package com.yueqi.timer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentedTripLogTest {
+    private static final long DAY = 24 * 3600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 每天一条记录, elapsed 等于天数
+    private static void appendDays(SegmentedTripLog log, int from, int to) throws Exception {
+        TripRecord record = new TripRecord();
+        for (int day = from; day < to; day++) {
+            log.append(record.set(TripRecord.TYPE_STOP, day, day * DAY, day));
+        }
+    }
+
+    private static List<Long> indices(SegmentedTripLog log, long fromWall, long toWall) throws Exception {
+        List<Long> result = new ArrayList<>();
+        log.scan(fromWall, toWall, (index, record) -> {
+            assertEquals(index, record.elapsedMillis);
+            return result.add(index);
+        });
+        return result;
+    }
+
+    @Test
+    public void rotatesByCountAndSpanAndKeepsIndicesAcrossReopen() throws Exception {
+        File dir = folder.newFolder();
+        try (SegmentedTripLog log = SegmentedTripLog.open(dir, 4, 10 * DAY)) {
+            appendDays(log, 0, 10);
+            // 0-3, 4-7, 8-9
+            assertEquals(3, log.getSegmentCount());
+            assertEquals(10, log.size());
+        }
+        try (SegmentedTripLog log = SegmentedTripLog.open(dir, 4, 3 * DAY)) {
+            appendDays(log, 10, 14);
+            // 8-10 达到跨度上限, 11-13 为新段
+            assertEquals(4, log.getSegmentCount());
+            assertEquals(14, log.size());
+            assertEquals(14, indices(log, Long.MIN_VALUE, Long.MAX_VALUE).size());
+            assertEquals(List.of(5L, 6L), indices(log, 5 * DAY, 7 * DAY));
+            TripRecord out = new TripRecord();
+            assertTrue(log.read(12, out));
+            assertEquals(12, out.elapsedMillis);
+        }
+    }
+
+    @Test
+    public void retentionDropsOldSegmentsButNeverTheActiveOne() throws Exception {
+        File dir = folder.newFolder();
+        try (SegmentedTripLog log = SegmentedTripLog.open(dir, 4, Long.MAX_VALUE)) {
+            appendDays(log, 0, 10);
+            assertEquals(1, log.applyRetention(4 * DAY, 0));
+            assertEquals(4, log.getFirstIndex());
+            assertEquals(List.of(4L, 5L), indices(log, 0, 6 * DAY));
+
+            assertEquals(1, log.applyRetention(Long.MIN_VALUE, 2 * TripRecord.SIZE));
+            assertEquals(8, log.getFirstIndex());
+            assertEquals(0, log.applyRetention(Long.MAX_VALUE, 1));
+            assertEquals(1, log.getSegmentCount());
+        }
+        try (SegmentedTripLog log = SegmentedTripLog.open(dir, 4, Long.MAX_VALUE)) {
+            assertEquals(8, log.getFirstIndex());
+            assertEquals(List.of(8L, 9L), indices(log, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void compactionMergesSmallSealedSegments() throws Exception {
+        File dir = folder.newFolder();
+        try (SegmentedTripLog log = SegmentedTripLog.open(dir, 8, 2 * DAY)) {
+            // 跨度上限使每段只有两条记录
+            appendDays(log, 0, 12);
+            assertEquals(6, log.getSegmentCount());
+            assertEquals(0, log.compact(() -> true));
+            assertEquals(3, log.compact(() -> false));
+            // 0-7 合并为一段, 8-9 不足一半但之后只剩当前段
+            assertEquals(3, log.getSegmentCount());
+            assertEquals(12, indices(log, Long.MIN_VALUE, Long.MAX_VALUE).size());
+        }
+        String[] names = dir.list();
+        assertNotNull(names);
+        assertEquals(4, names.length);
+        try (SegmentedTripLog log = SegmentedTripLog.open(dir, 8, 2 * DAY)) {
+            assertEquals(3, log.getSegmentCount());
+            assertEquals(List.of(3L, 4L), indices(log, 3 * DAY, 5 * DAY));
+        }
+    }
+
+    @Test
+    public void migratesLegacyFileAsFirstSegment() throws Exception {
+        File legacy = folder.newFile();
+        try (TripLog log = TripLog.open(legacy)) {
+            TripRecord record = new TripRecord();
+            log.append(record.set(TripRecord.TYPE_STOP, 0, 0, 0));
+            log.append(record.set(TripRecord.TYPE_STOP, 1, DAY, 1));
+        }
+        File dir = new File(folder.getRoot(), "trips");
+        assertTrue(SegmentedTripLog.migrate(legacy, dir));
+        assertFalse(legacy.exists());
+        try (SegmentedTripLog log = SegmentedTripLog.open(dir)) {
+            assertEquals(2, log.size());
+            appendDays(log, 2, 3);
+            assertEquals(List.of(0L, 1L, 2L), indices(log, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+}
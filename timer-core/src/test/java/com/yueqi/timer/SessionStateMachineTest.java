@@ -0,0 +1,129 @@
+package com.yueqi.timer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SessionStateMachineTest {
+    private static final long CONNECT_DEBOUNCE = 3_000;
+    private static final long DISCONNECT_DEBOUNCE = 60_000;
+
+    private long now;
+    // 与 Handler 的 removeCallbacks + postDelayed 一致
+    private final Map<Runnable, Long> pending = new LinkedHashMap<>();
+    private final List<String> events = new ArrayList<>();
+    private SessionStateMachine machine;
+
+    @Before
+    public void setUp() {
+        machine = new SessionStateMachine(new TickScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                pending.put(task, now + delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                pending.remove(task);
+            }
+        }, CONNECT_DEBOUNCE, DISCONNECT_DEBOUNCE);
+        machine.setListener(new SessionStateMachine.Listener() {
+            @Override
+            public void onSessionStart() {
+                events.add("start@" + now);
+            }
+
+            @Override
+            public void onSessionEnd(int reason) {
+                events.add("end" + reason + "@" + now);
+            }
+        });
+    }
+
+    private void advance(long millis) {
+        long target = now + millis;
+        while (true) {
+            Runnable next = null;
+            long nextAt = Long.MAX_VALUE;
+            for (Map.Entry<Runnable, Long> e : pending.entrySet()) {
+                if (e.getValue() < nextAt) {
+                    nextAt = e.getValue();
+                    next = e.getKey();
+                }
+            }
+            if (next == null || nextAt > target) {
+                break;
+            }
+            pending.remove(next);
+            now = nextAt;
+            next.run();
+        }
+        now = target;
+    }
+
+    @Test
+    public void crankDipDoesNotSplitTrip() {
+        machine.onPowerConnected();
+        advance(1_000);
+        // 打火时掉电, 接通还没确认
+        machine.onPowerDisconnected();
+        machine.onPowerConnected();
+        assertEquals(SessionStateMachine.STATE_CONNECT_PENDING, machine.getState());
+        advance(CONNECT_DEBOUNCE);
+        assertEquals(List.of("start@4000"), events);
+
+        advance(3600_000);
+        machine.onPowerDisconnected();
+        advance(10_000);
+        machine.onPowerConnected();
+        assertTrue(machine.isSessionActive());
+        assertTrue(pending.isEmpty());
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void sustainedDisconnectEndsTrip() {
+        machine.onBoot(true);
+        assertEquals(List.of("start@0"), events);
+        machine.onPowerDisconnected();
+        advance(DISCONNECT_DEBOUNCE - 1);
+        assertTrue(machine.isSessionActive());
+        advance(1);
+        assertEquals(List.of("start@0", "end0@60000"), events);
+        assertEquals(SessionStateMachine.STATE_OFF, machine.getState());
+        // 熄火后的断开事件不再回调
+        machine.onPowerDisconnected();
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void shutdownEndsOnlyAfterPowerLoss() {
+        machine.onBoot(true);
+        machine.onShutdown();
+        // 行驶中关机: 行程由开机后的检查点恢复
+        assertEquals(List.of("start@0"), events);
+        assertEquals(SessionStateMachine.STATE_OFF, machine.getState());
+
+        machine.restore(true);
+        machine.onPowerDisconnected();
+        advance(5_000);
+        machine.onShutdown();
+        assertEquals(List.of("start@0", "end1@5000"), events);
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    public void zeroDebounceActsImmediately() {
+        machine.setDebounce(0, 0);
+        machine.onPowerConnected();
+        machine.onPowerDisconnected();
+        assertEquals(List.of("start@0", "end0@0"), events);
+        assertTrue(pending.isEmpty());
+    }
+}
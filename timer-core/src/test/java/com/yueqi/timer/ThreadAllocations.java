@@ -0,0 +1,30 @@
+package com.yueqi.timer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 当前线程累计分配的字节数, 用于 "不随次数增长" 这类宽松的分配断言.
+ * 依赖 HotSpot 的 com.sun.management 扩展; 不支持时跳过调用它的测试而不是失败.
+ * 精确的单次分配量用 JMH 的 -prof gc 查看.
+ */
+public final class ThreadAllocations {
+    private ThreadAllocations() {
+    }
+
+    public static long current() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        boolean supported;
+        try {
+            supported = bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            supported = false;
+        }
+        assumeTrue("thread allocation counters unavailable", supported);
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,107 @@
+package com.yueqi.timer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 计时线程模型的确定性版本 (实测抖动见 jmh 中的 TickJitterBenchmark):
+ * tick 与主线程共用 looper 时会被长任务推迟, 在独立 looper 上则准时;
+ * 其他线程读取的快照只在状态变化时重新发布, 每次 tick 不发布.
+ */
+public class TickThreadingTest {
+    private static final long TICK_INTERVAL_MS = 100;
+    // 每 250ms 主线程被占用 80ms
+    private static final long STALL_PERIOD_MS = 250;
+    private static final long STALL_MS = 80;
+    private static final long RUN_MS = 60_000;
+
+    private static final class Lateness implements TimingEngine.TickProbe {
+        long ticks;
+        long late;
+        long max;
+
+        @Override
+        public void onScheduledTick(long latenessMillis, long durationNanos) {
+            ticks++;
+            if (latenessMillis > 0) {
+                late++;
+            }
+            max = Math.max(max, latenessMillis);
+        }
+    }
+
+    private static void stallEvery(VirtualScheduler looper) {
+        Runnable[] stall = new Runnable[1];
+        stall[0] = () -> {
+            looper.busy(STALL_MS);
+            looper.schedule(stall[0], STALL_PERIOD_MS - STALL_MS);
+        };
+        looper.schedule(stall[0], 0);
+    }
+
+    private static Lateness run(boolean dedicatedThread) {
+        VirtualScheduler mainLooper = new VirtualScheduler(0, 0);
+        stallEvery(mainLooper);
+        VirtualScheduler timingLooper = dedicatedThread ? new VirtualScheduler(0, 0) : mainLooper;
+        TimingEngine engine = new TimingEngine(timingLooper, timingLooper, TICK_INTERVAL_MS);
+        Lateness lateness = new Lateness();
+        engine.setTickProbe(lateness);
+        engine.start();
+        // 两个线程各自推进, 互不等待
+        for (long t = 10; t <= RUN_MS; t += 10) {
+            mainLooper.advanceTo(t);
+            if (dedicatedThread) {
+                timingLooper.advanceTo(t);
+            }
+        }
+        return lateness;
+    }
+
+    @Test
+    public void mainThreadStallsDelayOnlySharedLooperTicks() {
+        Lateness shared = run(false);
+        Lateness dedicated = run(true);
+
+        assertTrue(shared.late > 0);
+        assertTrue(shared.max > 0 && shared.max <= STALL_MS);
+        // 延迟不累积: 每次都对齐到下一个边界, tick 数不变
+        assertEquals(RUN_MS / TICK_INTERVAL_MS, shared.ticks);
+
+        assertEquals(RUN_MS / TICK_INTERVAL_MS, dedicated.ticks);
+        assertEquals(0, dedicated.late);
+        assertEquals(0, dedicated.max);
+    }
+
+    @Test
+    public void readersUseSnapshotsPublishedOnlyOnStateChanges() {
+        VirtualScheduler timingLooper = new VirtualScheduler(0, 0);
+        TimingEngine engine = new TimingEngine(timingLooper, timingLooper);
+        TimerBank.Snapshot[] published = {engine.getTimers().snapshot()};
+        int[] publishCount = {0};
+        // 与 TimerService 一致: 状态变化时在计时线程上发布新快照
+        engine.setStateListener((id, state) -> {
+            published[0] = engine.getTimers().snapshot();
+            publishCount[0]++;
+        });
+
+        engine.start();
+        TimerBank.Snapshot running = published[0];
+        timingLooper.advanceBy(3600_000 + 123);
+        // 一小时 3600 次 tick 没有发布新快照, 读者按快照和时钟算出的时间与引擎一致
+        assertSame(running, published[0]);
+        assertEquals(1, publishCount[0]);
+        assertEquals(3600, engine.getWakeupCount());
+        assertTrue(running.isRunning(TimingEngine.PRIMARY));
+        assertEquals(engine.getElapsedMillis(), running.getElapsedMillis(TimingEngine.PRIMARY, timingLooper.now()));
+
+        engine.pause();
+        assertEquals(2, publishCount[0]);
+        TimerBank.Snapshot paused = published[0];
+        timingLooper.advanceBy(60_000);
+        assertFalse(paused.isRunning(TimingEngine.PRIMARY));
+        assertEquals(3600_123, paused.getElapsedMillis(TimingEngine.PRIMARY, timingLooper.now()));
+        // 快照不可变, 旧快照不受之后状态变化影响
+        assertTrue(running.isRunning(TimingEngine.PRIMARY));
+    }
+}
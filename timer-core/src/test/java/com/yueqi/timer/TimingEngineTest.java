@@ -0,0 +1,202 @@
+package com.yueqi.timer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingEngineTest {
+    private long now;
+    private Runnable pendingTask;
+    private long pendingAt;
+    private final List<Long> ticks = new ArrayList<>();
+    private TimingEngine engine;
+
+    @Before
+    public void setUp() {
+        now = 10_000;
+        TickScheduler scheduler = new TickScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                pendingTask = task;
+                pendingAt = now + delayMillis;
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                if (pendingTask == task) {
+                    pendingTask = null;
+                }
+            }
+        };
+        engine = new TimingEngine(() -> now, scheduler);
+        engine.setListener((elapsedMillis, running) -> {
+            if (running) {
+                ticks.add(elapsedMillis);
+            }
+        });
+    }
+
+    // 模拟主线程繁忙: 每个 tick 都比预定时间晚 lateMillis 执行
+    private void runPending(long lateMillis) {
+        Runnable task = pendingTask;
+        pendingTask = null;
+        now = pendingAt + lateMillis;
+        task.run();
+    }
+
+    @Test
+    public void ticksAlignToWholeSecondsDespiteLateDelivery() {
+        engine.start();
+        for (int i = 0; i < 10; i++) {
+            runPending(37);
+        }
+        assertEquals(11, ticks.size());
+        for (int i = 1; i < ticks.size(); i++) {
+            assertEquals(i * 1000L + 37, (long) ticks.get(i));
+        }
+    }
+
+    @Test
+    public void pauseAndResumeAccumulate() {
+        engine.start();
+        now += 2500;
+        assertTrue(engine.pause());
+        assertEquals(2500, engine.getElapsedMillis());
+        now += 60_000;
+        assertEquals(2500, engine.getElapsedMillis());
+        assertNull(pendingTask);
+        assertTrue(engine.resume());
+        assertEquals(now + 500, pendingAt);
+        now += 1000;
+        assertEquals(3500, engine.getElapsedMillis());
+    }
+
+    @Test
+    public void startAfterStopResetsAndStartWhilePausedResumes() {
+        engine.start();
+        now += 4000;
+        engine.pause();
+        now += 1000;
+        assertTrue(engine.stop());
+        assertEquals(0, engine.getElapsedMillis());
+        assertFalse(engine.isRunning());
+        engine.start();
+        now += 1200;
+        engine.pause();
+        engine.start();
+        now += 300;
+        assertEquals(1500, engine.getElapsedMillis());
+    }
+
+    @Test
+    public void invalidTransitionsAreIgnored() {
+        assertFalse(engine.pause());
+        assertFalse(engine.resume());
+        assertFalse(engine.stop());
+        assertTrue(engine.start());
+        assertFalse(engine.start());
+    }
+
+    @Test
+    public void restoresRunningStateFromCheckpointFields() {
+        engine.start();
+        now += 2000;
+        engine.pause();
+        engine.resume();
+        now += 700;
+        long accumulated = engine.getAccumulatedMillis();
+        long anchor = engine.getAnchorMillis();
+
+        // 进程被杀后新建的引擎, 单调时钟继续走
+        TimingEngine restored = new TimingEngine(() -> now, new TickScheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                pendingAt = now + delayMillis;
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+            }
+        });
+        now += 5000;
+        restored.restore(TimingEngine.STATE_RUNNING, accumulated, anchor);
+        assertTrue(restored.isRunning());
+        assertEquals(7700, restored.getElapsedMillis());
+        assertEquals(now + 300, pendingAt);
+
+        restored.restore(TimingEngine.STATE_PAUSED, 1234, 0);
+        now += 5000;
+        assertEquals(1234, restored.getElapsedMillis());
+        assertTrue(restored.resume());
+    }
+
+    @Test
+    public void timersShareOneTickAlignedToPrimary() {
+        // 超过初始容量, 添加时扩容
+        int[] ids = new int[40];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = engine.addTimer("t" + i);
+        }
+        engine.start();
+        now += 300;
+        for (int id : ids) {
+            engine.start(id);
+        }
+        // 仍然只有一个待执行的 tick, 对齐主计时的整秒
+        assertEquals(now + 700, pendingAt);
+        for (int i = 0; i < 5; i++) {
+            runPending(0);
+        }
+        assertEquals(5000, engine.getElapsedMillis());
+        assertEquals(4700, engine.getElapsedMillis(ids[0]));
+
+        // 主计时暂停后对齐编号最小的在走计时器
+        now += 100;
+        engine.pause();
+        assertNotNull(pendingTask);
+        assertEquals(now + 200, pendingAt);
+        for (int id : ids) {
+            engine.stop(id);
+        }
+        assertNull(pendingTask);
+        assertEquals(0, engine.getElapsedMillis(ids[3]));
+        assertEquals(5100, engine.getElapsedMillis());
+    }
+
+    @Test
+    public void tickIntervalCanBeLoweredOrDisabledWhileRunning() {
+        engine.start();
+        runPending(0);
+        engine.setTickIntervalMillis(0);
+        assertNull(pendingTask);
+        now += 3_600_000;
+        assertEquals(3_601_000, engine.getElapsedMillis());
+
+        engine.setTickIntervalMillis(60_000);
+        assertEquals(now + 59_000, pendingAt);
+        runPending(0);
+        assertEquals(3_660_000, (long) ticks.get(ticks.size() - 1));
+        assertEquals(2, engine.getWakeupCount());
+    }
+
+    @Test
+    public void tickProbeReportsLatenessOfScheduledTicksOnly() {
+        List<Long> lateness = new ArrayList<>();
+        engine.setTickProbe((latenessMillis, durationNanos) -> {
+            lateness.add(latenessMillis);
+            assertTrue(durationNanos >= 0);
+        });
+        engine.start();
+        engine.start(engine.addTimer("other"));
+        assertTrue(lateness.isEmpty());
+        runPending(0);
+        runPending(120);
+        assertEquals(2, lateness.size());
+        assertEquals(0L, (long) lateness.get(0));
+        assertEquals(120L, (long) lateness.get(1));
+    }
+}
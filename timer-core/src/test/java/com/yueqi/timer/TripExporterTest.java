@@ -0,0 +1,117 @@
+package com.yueqi.timer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class TripExporterTest {
+    private static final TimeZone SHANGHAI = TimeZone.getTimeZone("Asia/Shanghai");
+    // 2024-03-01 08:00:00 +08:00
+    private static final long T0 = 1_709_251_200_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TripLog writeLog(int sessions) throws Exception {
+        File file = folder.newFile();
+        // 一次批量写入, 逐条追加每条都要落盘
+        byte[] encoded = new byte[sessions * 2 * TripRecord.SIZE];
+        TripRecord record = new TripRecord();
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < sessions; i++) {
+            long start = T0 + i * 24 * 3600_000L;
+            record.set(TripRecord.TYPE_START, start, start, 0).encode(encoded, 2 * i * TripRecord.SIZE, crc);
+            record.set(TripRecord.TYPE_STOP, start, start + 90_000, 90_000)
+                    .encode(encoded, (2 * i + 1) * TripRecord.SIZE, crc);
+        }
+        try (TripLog log = TripLog.open(file)) {
+            log.append(encoded, 0, sessions * 2);
+        }
+        return TripLog.openReadOnly(file);
+    }
+
+    private static String export(TripExporter exporter, TripLog log) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(log, out);
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void writesCsvRowsInLocalTime() throws Exception {
+        try (TripLog log = writeLog(1)) {
+            String csv = export(new TripExporter(TripExporter.FORMAT_CSV, SHANGHAI), log);
+            assertEquals("session_id,event,local_time,wall_time_ms,elapsed_ms\n"
+                    + T0 + ",start,2024-03-01 08:00:00," + T0 + ",0\n"
+                    + T0 + ",stop,2024-03-01 08:01:30," + (T0 + 90_000) + ",90000\n", csv);
+        }
+    }
+
+    @Test
+    public void writesJsonArrayAndFiltersByRange() throws Exception {
+        try (TripLog log = writeLog(3)) {
+            TripExporter exporter = new TripExporter(TripExporter.FORMAT_JSON, SHANGHAI);
+            long day = 24 * 3600_000L;
+            exporter.setRange(T0 + day, T0 + 2 * day);
+            String json = export(exporter, log);
+            assertEquals("[\n"
+                    + "{\"session_id\":" + (T0 + day) + ",\"event\":\"start\",\"local_time\":\"2024-03-02 08:00:00\","
+                    + "\"wall_time_ms\":" + (T0 + day) + ",\"elapsed_ms\":0},\n"
+                    + "{\"session_id\":" + (T0 + day) + ",\"event\":\"stop\",\"local_time\":\"2024-03-02 08:01:30\","
+                    + "\"wall_time_ms\":" + (T0 + day + 90_000) + ",\"elapsed_ms\":90000}\n"
+                    + "]\n", json);
+
+            exporter.setRange(0, 1);
+            assertEquals("[]\n", export(exporter, log));
+        }
+    }
+
+    @Test
+    public void cancelStopsTheScan() throws Exception {
+        try (TripLog log = writeLog(10_000)) {
+            TripExporter exporter = new TripExporter(TripExporter.FORMAT_CSV, SHANGHAI);
+            long[] lastProgress = new long[1];
+            exporter.setProgressListener((scanned, total) -> {
+                lastProgress[0] = scanned;
+                exporter.cancel();
+            });
+            try {
+                export(exporter, log);
+                fail();
+            } catch (CancellationException expected) {
+            }
+            assertTrue(lastProgress[0] > 0 && lastProgress[0] < 20_000);
+        }
+    }
+
+    @Test
+    public void memoryDoesNotGrowWithRecordCount() throws Exception {
+        try (TripLog log = writeLog(50_000)) {
+            OutputStream discard = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+            TripExporter exporter = new TripExporter(TripExporter.FORMAT_JSON, SHANGHAI);
+            exporter.export(log, discard);
+            long before = ThreadAllocations.current();
+            assertEquals(100_000, exporter.export(log, discard));
+            long allocated = ThreadAllocations.current() - before;
+            // 十万条记录, 每条分配哪怕一个对象也会超过这个上限
+            assertTrue("allocated " + allocated + " bytes", allocated < 256 * 1024);
+        }
+    }
+}
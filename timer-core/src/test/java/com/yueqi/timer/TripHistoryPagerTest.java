@@ -0,0 +1,134 @@
+package com.yueqi.timer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+public class TripHistoryPagerTest {
+    private static final long DAY = 24 * 3600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 手动执行的 executor, 模拟后台加载
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    // elapsed 等于编号
+    private static void append(SegmentedTripLog log, int from, int to) throws Exception {
+        TripRecord record = new TripRecord();
+        for (int i = from; i < to; i++) {
+            log.append(record.set(TripRecord.TYPE_STOP, i, i * DAY, i));
+        }
+    }
+
+    @Test
+    public void readsNewestFirstAcrossPagesAndGaps() throws Exception {
+        try (SegmentedTripLog log = SegmentedTripLog.open(folder.newFolder(), 100, 1000 * DAY)) {
+            append(log, 0, 1000);
+            // 删除最旧的两段, 编号从 200 开始
+            log.applyRetention(200 * DAY, 0);
+            assertEquals(200, log.getFirstIndex());
+
+            TripHistoryPager pager = new TripHistoryPager(log, 32, 4, tasks::add);
+            int[] loaded = new int[1];
+            pager.setListener((fromPosition, count) -> loaded[0] += count);
+            assertEquals(800, pager.getCount());
+
+            TripRecord record = new TripRecord();
+            assertEquals(TripHistoryPager.LOADING, pager.get(0, record));
+            // 同一页只提交一次
+            assertEquals(TripHistoryPager.LOADING, pager.get(1, record));
+            assertEquals(1, tasks.size());
+            runTasks();
+            assertEquals(32, loaded[0]);
+            assertEquals(TripHistoryPager.AVAILABLE, pager.get(0, record));
+            assertEquals(999, record.elapsedMillis);
+
+            // 每页读完, 最后一页不满
+            for (int position = 0; position < pager.getCount(); position++) {
+                if (pager.get(position, record) == TripHistoryPager.LOADING) {
+                    runTasks();
+                    assertEquals(TripHistoryPager.AVAILABLE, pager.get(position, record));
+                }
+                assertEquals(999 - position, record.elapsedMillis);
+            }
+            assertEquals(800, loaded[0]);
+            assertTrue(pager.getCachedPageCount() <= 4);
+
+            // 创建后追加的记录不影响位置
+            append(log, 1000, 1010);
+            assertEquals(800, pager.getCount());
+            pager.get(0, record);
+            runTasks();
+            assertEquals(TripHistoryPager.AVAILABLE, pager.get(0, record));
+            assertEquals(999, record.elapsedMillis);
+        }
+    }
+
+    @Test
+    public void cacheSizeDoesNotDependOnRecordCount() throws Exception {
+        try (SegmentedTripLog log = SegmentedTripLog.open(folder.newFolder())) {
+            append(log, 0, 20_000);
+            TripHistoryPager pager = new TripHistoryPager(log, 64, 3, tasks::add);
+            TripRecord record = new TripRecord();
+            // 从头滑到尾再滑回来
+            for (int position = 0; position < pager.getCount(); position += 7) {
+                pager.get(position, record);
+                runTasks();
+                assertTrue(pager.getCachedPageCount() <= 3);
+            }
+            for (int position = pager.getCount() - 1; position >= 0; position -= 7) {
+                pager.get(position, record);
+                runTasks();
+                assertEquals(TripHistoryPager.AVAILABLE, pager.get(position, record));
+                assertEquals(19_999 - position, record.elapsedMillis);
+            }
+            assertTrue(pager.getCachedPageCount() <= 3);
+
+            // 快速滑动时排队的远处页直接跳过
+            pager.get(0, record);
+            pager.get(pager.getCount() - 1, record);
+            runTasks();
+            assertEquals(TripHistoryPager.AVAILABLE, pager.get(pager.getCount() - 1, record));
+
+            pager.close();
+            assertEquals(0, pager.getCachedPageCount());
+            assertEquals(TripHistoryPager.LOADING, pager.get(0, record));
+            assertTrue(tasks.isEmpty());
+        }
+    }
+
+    @Test
+    public void prefetchDoesNotDisplaceDeferredVisiblePage() throws Exception {
+        try (SegmentedTripLog log = SegmentedTripLog.open(folder.newFolder())) {
+            append(log, 0, 1000);
+            // 最多 3 个排队的加载
+            TripHistoryPager pager = new TripHistoryPager(log, 32, 2, tasks::add);
+            int[] loaded = new int[1];
+            pager.setListener((fromPosition, count) -> loaded[0] += count);
+            TripRecord record = new TripRecord();
+            pager.get(0, record);
+            pager.get(32 + 16, record);
+            pager.get(2 * 32 + 16, record);
+            assertEquals(3, tasks.size());
+            // 队列已满, 正在显示的第 3 页延后提交; 靠近页尾的预读不能挤掉它
+            int visible = 3 * 32 + 30;
+            assertEquals(TripHistoryPager.LOADING, pager.get(visible, record));
+            runTasks();
+            assertEquals(TripHistoryPager.AVAILABLE, pager.get(visible, record));
+            assertEquals(999 - visible, record.elapsedMillis);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.yueqi.timer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class TripLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TripRecord record(int type, long elapsed) {
+        return new TripRecord().set(type, 1000, 1000 + elapsed, elapsed);
+    }
+
+    private static List<Long> elapsedValues(TripRecordSource log) throws Exception {
+        List<Long> values = new ArrayList<>();
+        log.scan(0, (index, record) -> values.add(record.elapsedMillis));
+        return values;
+    }
+
+    @Test
+    public void appendsAndReadsBack() throws Exception {
+        File file = folder.newFile();
+        try (TripLog log = TripLog.open(file)) {
+            log.append(record(TripRecord.TYPE_START, 0));
+            log.append(record(TripRecord.TYPE_PAUSE, 5000));
+            log.append(record(TripRecord.TYPE_STOP, 5000));
+            assertEquals(3, log.size());
+            TripRecord out = new TripRecord();
+            assertTrue(log.read(1, out));
+            assertEquals(TripRecord.TYPE_PAUSE, out.type);
+            assertEquals(6000, out.wallTime);
+            assertFalse(log.read(3, out));
+        }
+        assertEquals(3 * TripRecord.SIZE, file.length());
+    }
+
+    @Test
+    public void appendDoesNotRewriteExistingData() throws Exception {
+        File file = folder.newFile();
+        try (TripLog log = TripLog.open(file)) {
+            log.append(record(TripRecord.TYPE_START, 0));
+            byte[] before = Files.readAllBytes(file.toPath());
+            log.append(record(TripRecord.TYPE_STOP, 42));
+            byte[] after = Files.readAllBytes(file.toPath());
+            assertArrayEquals(before, Arrays.copyOf(after, before.length));
+        }
+    }
+
+    @Test
+    public void truncatesTornTrailingRecordOnOpen() throws Exception {
+        File file = folder.newFile();
+        try (TripLog log = TripLog.open(file)) {
+            log.append(record(TripRecord.TYPE_START, 0));
+            log.append(record(TripRecord.TYPE_PAUSE, 1000));
+        }
+        // 模拟断电: 最后一条只写了一半
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() + TripRecord.SIZE / 2);
+        }
+        try (TripLog log = TripLog.open(file)) {
+            assertEquals(2, log.size());
+            assertEquals(2 * TripRecord.SIZE, file.length());
+        }
+    }
+
+    @Test
+    public void truncatesTrailingRecordWithBadChecksum() throws Exception {
+        File file = folder.newFile();
+        try (TripLog log = TripLog.open(file)) {
+            log.append(record(TripRecord.TYPE_START, 0));
+            log.append(record(TripRecord.TYPE_PAUSE, 1000));
+        }
+        // 长度完整但内容未落盘, 例如延迟分配留下的零块
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(TripRecord.SIZE);
+            raf.write(new byte[TripRecord.SIZE]);
+        }
+        try (TripLog log = TripLog.open(file)) {
+            assertEquals(1, log.size());
+            assertEquals(Arrays.asList(0L), elapsedValues(log));
+            log.append(record(TripRecord.TYPE_STOP, 2000));
+            assertEquals(Arrays.asList(0L, 2000L), elapsedValues(log));
+        }
+    }
+
+    @Test
+    public void readOnlyScanSkipsDamagedRecords() throws Exception {
+        File file = folder.newFile();
+        byte[] encoded = new byte[300 * TripRecord.SIZE];
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 300; i++) {
+            record(TripRecord.TYPE_PAUSE, i).encode(encoded, i * TripRecord.SIZE, crc);
+        }
+        try (TripLog log = TripLog.open(file)) {
+            log.append(encoded, 0, 300);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(10L * TripRecord.SIZE + 3);
+            raf.write(0x7f);
+        }
+        try (TripLog log = TripLog.openReadOnly(file)) {
+            List<Long> values = elapsedValues(log);
+            assertEquals(299, values.size());
+            assertFalse(values.contains(10L));
+            assertEquals(299L, (long) values.get(298));
+        }
+    }
+
+    @Test
+    public void writerBatchesAppendsInBackground() throws Exception {
+        File dir = folder.newFolder();
+        TripLogWriter writer = new TripLogWriter(dir, 10_000);
+        SegmentedTripLog log = writer.awaitLog();
+        TripRecord reused = new TripRecord();
+        for (int i = 0; i < 100; i++) {
+            writer.append(reused.set(TripRecord.TYPE_PAUSE, 1, 1, i));
+        }
+        assertEquals(0, log.size());
+        writer.flush().get(5, TimeUnit.SECONDS);
+        assertEquals(100, log.size());
+        writer.append(reused.set(TripRecord.TYPE_STOP, 1, 1, 100));
+        writer.close(5000);
+        try (SegmentedTripLog reopened = SegmentedTripLog.open(dir)) {
+            List<Long> values = elapsedValues(reopened);
+            assertEquals(101, values.size());
+            assertEquals(100L, (long) values.get(100));
+        }
+    }
+
+    // 预期中的写入失败不打印异常
+    private static void quietly(ThrowingRunnable body) throws Exception {
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            body.run();
+        } finally {
+            System.setErr(err);
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    @Test
+    public void writerRetainsFailedBatchesUpToLimit() throws Exception {
+        quietly(() -> {
+            TripLogWriter writer = new TripLogWriter(folder.newFolder(), 10_000);
+            // 日志关闭后每次写入都失败
+            writer.awaitLog().close();
+            TripRecord reused = new TripRecord();
+            for (int i = 0; i < 100; i++) {
+                writer.append(reused.set(TripRecord.TYPE_PAUSE, 1, 1, i));
+            }
+            writer.flush().get(5, TimeUnit.SECONDS);
+            // 失败的批次留待重试, 没有丢弃
+            assertEquals(0, writer.getDroppedCount());
+
+            for (int i = 0; i < TripLogWriter.MAX_RETAINED_RECORDS; i++) {
+                writer.append(reused.set(TripRecord.TYPE_PAUSE, 1, 1, i));
+            }
+            writer.flush().get(5, TimeUnit.SECONDS);
+            // 超出上限时丢弃最旧的
+            assertEquals(100, writer.getDroppedCount());
+            writer.flush().get(5, TimeUnit.SECONDS);
+            assertEquals(100, writer.getDroppedCount());
+            writer.close(5000);
+        });
+    }
+
+    @Test
+    public void writerRetriesRecordsLeftByPartialWrite() throws Exception {
+        File dir = folder.newFolder();
+        List<Long> appended = new ArrayList<>();
+        TripLogWriter writer = new TripLogWriter(dir, 10_000, new TripLogWriter.Callback() {
+            @Override
+            public void onOpened(TripRecordSource log) {
+            }
+
+            @Override
+            public void onAppended(long index, TripRecord record) {
+                synchronized (appended) {
+                    appended.add(index);
+                }
+            }
+        });
+        SegmentedTripLog log = writer.awaitLog();
+        // 下一个分段的文件名被目录占用, 轮转失败
+        File blocker = new File(dir, "seg-0000000000000000001.log");
+        assertTrue(blocker.mkdir());
+        quietly(() -> {
+            TripRecord reused = new TripRecord();
+            writer.append(reused.set(TripRecord.TYPE_START, 1, 0, 0));
+            // 跨度超过一个分段, 需要轮转
+            writer.append(reused.set(TripRecord.TYPE_STOP, 1, 2 * SegmentedTripLog.DEFAULT_SEGMENT_SPAN_MILLIS, 1));
+            writer.flush().get(5, TimeUnit.SECONDS);
+            assertEquals(1, log.size());
+            synchronized (appended) {
+                // 已落盘的部分照常回调
+                assertEquals(Arrays.asList(0L), appended);
+            }
+
+            // 没有新的 append, 由退避重试写出剩下的记录
+            assertTrue(blocker.delete());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (log.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+        });
+        assertEquals(2, log.size());
+        writer.close(5000);
+        synchronized (appended) {
+            assertEquals(Arrays.asList(0L, 1L), appended);
+        }
+        assertEquals(0, writer.getDroppedCount());
+    }
+}
@@ -0,0 +1,153 @@
+package com.yueqi.timer;
+
+/**
+ * 测试用的虚拟时钟和调度器, 代替 SystemClock.elapsedRealtime() 和 Handler.
+ * 与 Handler 的 removeCallbacks + postDelayed 一致: 每个任务最多一个待执行时间,
+ * 到期时间相同的按投递顺序执行. 任务表预先分配, 推进时间不分配对象,
+ * 可以在分配统计中使用. 另有一个可跳变的墙上时钟, 以及模拟进程被杀和重启设备.
+ * 任务中调用 {@link #busy} 模拟长任务占用 looper, 期间到期的任务推迟执行.
+ */
+public class VirtualScheduler implements TickScheduler, MonotonicClock {
+    private static final int MAX_TASKS = 16;
+
+    private final Runnable[] tasks = new Runnable[MAX_TASKS];
+    private final long[] due = new long[MAX_TASKS];
+    private final long[] order = new long[MAX_TASKS];
+    private int taskCount;
+    private long sequence;
+    private long now;
+    private long wallOffset;
+    private int bootCount;
+    private long executed;
+
+    public VirtualScheduler(long uptimeMillis, long wallTime) {
+        now = uptimeMillis;
+        wallOffset = wallTime - uptimeMillis;
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    public long wallTime() {
+        return now + wallOffset;
+    }
+
+    public int getBootCount() {
+        return bootCount;
+    }
+
+    /**
+     * 已执行的任务数.
+     */
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    public int getPendingCount() {
+        return taskCount;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        int i = indexOf(task);
+        if (i < 0) {
+            if (taskCount == MAX_TASKS) {
+                throw new IllegalStateException("too many pending tasks");
+            }
+            i = taskCount++;
+            tasks[i] = task;
+        }
+        due[i] = now + Math.max(0, delayMillis);
+        order[i] = sequence++;
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        int i = indexOf(task);
+        if (i >= 0) {
+            removeAt(i);
+        }
+    }
+
+    /**
+     * 推进到 time, 依次执行期间到期的任务, 执行时时钟停在任务的到期时间.
+     */
+    public void advanceTo(long time) {
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < taskCount; i++) {
+                if (due[i] <= time && (next < 0 || due[i] < due[next]
+                        || (due[i] == due[next] && order[i] < order[next]))) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            Runnable task = tasks[next];
+            now = Math.max(now, due[next]);
+            removeAt(next);
+            executed++;
+            task.run();
+        }
+        now = Math.max(now, time);
+    }
+
+    public void advanceBy(long millis) {
+        advanceTo(now + millis);
+    }
+
+    /**
+     * 在任务中调用: 当前任务继续占用 looper millis 毫秒, 期间到期的任务在其后执行.
+     */
+    public void busy(long millis) {
+        now += millis;
+    }
+
+    /**
+     * 系统校时, 只影响墙上时间.
+     */
+    public void jumpWallClock(long deltaMillis) {
+        wallOffset += deltaMillis;
+    }
+
+    /**
+     * 进程被杀: 待执行的任务全部丢弃, 时钟继续.
+     */
+    public void killProcess() {
+        for (int i = 0; i < taskCount; i++) {
+            tasks[i] = null;
+        }
+        taskCount = 0;
+    }
+
+    /**
+     * 关机 offMillis 后重新开机: 单调时钟从 bootMillis 重新开始, 墙上时间照常流逝.
+     */
+    public void reboot(long offMillis, long bootMillis) {
+        killProcess();
+        long wall = wallTime() + offMillis + bootMillis;
+        now = bootMillis;
+        wallOffset = wall - now;
+        bootCount++;
+    }
+
+    private int indexOf(Runnable task) {
+        for (int i = 0; i < taskCount; i++) {
+            if (tasks[i] == task) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int i) {
+        taskCount--;
+        tasks[i] = tasks[taskCount];
+        due[i] = due[taskCount];
+        order[i] = order[taskCount];
+        tasks[taskCount] = null;
+    }
+}